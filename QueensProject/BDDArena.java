@@ -0,0 +1,66 @@
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDFactory;
+
+/**
+ * Frees intermediate BDDs when a scope ends, for use with try-with-resources:
+ * <pre>
+ * try (var arena = new BDDArena(fact)) {
+ *     var rul = arena.track(a.or(b));
+ *     ...
+ *     return arena.keep(rul);
+ * }
+ * </pre>
+ * Every BDD passed to track is freed by close, except those passed to keep,
+ * which the caller then owns. Otherwise the nodes of temporaries stay
+ * referenced until the garbage collector finalizes the BDD objects, so the
+ * factory can not reclaim them and its node table keeps growing.
+ *
+ * The arena also samples the nodes in use in the factory whenever it tracks
+ * a BDD, so the peak of a scope can be compared with freeing turned off by
+ * the system property queens.arena.free=false.
+ */
+public class BDDArena implements AutoCloseable {
+    private static final boolean FREE = !"false".equals(System.getProperty("queens.arena.free"));
+
+    private final BDDFactory fact;
+    private final Set<BDD> tracked = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int peakNodes;
+
+    public BDDArena(BDDFactory fact) {
+        this.fact = fact;
+        this.peakNodes = fact.getNodeNum();
+    }
+
+    /** Frees bdd when the arena is closed, returning it. */
+    public BDD track(BDD bdd) {
+        tracked.add(bdd);
+        peakNodes = Math.max(peakNodes, fact.getNodeNum());
+        return bdd;
+    }
+
+    /**
+     * Takes bdd out of the arena, so it outlives the scope. A BDD the arena
+     * does not track (eg. a field) is copied instead, so the result is
+     * always owned by the caller.
+     */
+    public BDD keep(BDD bdd) {
+        return tracked.remove(bdd) ? bdd : bdd.id();
+    }
+
+    /** The largest number of nodes in use seen while the arena was open. */
+    public int peakNodes() {
+        return peakNodes;
+    }
+
+    public void close() {
+        peakNodes = Math.max(peakNodes, fact.getNodeNum());
+        if (FREE) {
+            for (var bdd : tracked) bdd.free();
+        }
+        tracked.clear();
+    }
+}
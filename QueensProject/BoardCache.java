@@ -0,0 +1,164 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import net.sf.javabdd.BDD;
+
+/**
+ * A bounded cache of boards keyed by the canonical form of their queens (see
+ * Symmetry.canonicalizing), so a placement shares its entry with all of its
+ * rotations and reflections.
+ *
+ * Boards are stored by cell in the canonical orientation and mapped back to
+ * the orientation of the queens asked for. An entry also keeps the restricted
+ * rules of every orientation seen, so revisiting the exact same queens needs
+ * no BDD operation at all. The least recently used entries are dropped (and
+ * their rules freed) when there are more than the given number of entries, or
+ * more than the given number of rules kept over all entries. The rules are
+ * counted rather than their nodes: counting nodes would take a walk over
+ * every BDD kept, and would count the nodes they share once per BDD.
+ *
+ * The rules belong to a single factory and must only be used on its thread.
+ */
+public class BoardCache {
+    private final int capacity;
+    private final int maxRules;
+    private final LinkedHashMap<QueenSet, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int keptRules;
+    private long hits, misses, ruleHits;
+
+    /** The board of a canonical placement and the rules of its orientations. */
+    private static class Entry {
+        final int[] board;
+        final BDD[] rules = new BDD[Symmetry.values().length]; // By canonicalizing symmetry
+        int kept;
+
+        Entry(int[] board) {
+            this.board = board;
+        }
+    }
+
+    public BoardCache(int capacity, int maxRules) {
+        this.capacity = capacity;
+        this.maxRules = maxRules;
+    }
+
+    /**
+     * The cache configured by the system properties queens.boardCache (the
+     * number of boards, 256 by default) and queens.boardCache.rules (the
+     * restricted rules kept over all boards, 256 by default), or null if the
+     * number of boards is 0.
+     */
+    public static BoardCache fromProperties() {
+        int capacity = Integer.getInteger("queens.boardCache", 256);
+        int maxRules = Integer.getInteger("queens.boardCache.rules", 256);
+        return capacity > 0 ? new BoardCache(capacity, maxRules) : null;
+    }
+
+    /**
+     * The board (indexed [column][row]) of the given queens, or null if
+     * neither they nor any of their images are cached.
+     */
+    public int[][] get(QueenSet queens) {
+        var symmetry = Symmetry.canonicalizing(queens);
+        var entry = entries.get(queens.transform(symmetry));
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+
+        int n = queens.size();
+        var board = new int[n][n];
+        for (int column = 0; column < n; column++) {
+            for (int row = 0; row < n; row++) {
+                board[column][row] = entry.board[symmetry.cell(column + row * n, n)];
+            }
+        }
+        return board;
+    }
+
+    /**
+     * A copy of the rules restricted to exactly the given queens, owned by
+     * the caller, or null if they are not cached.
+     */
+    public BDD rules(QueenSet queens) {
+        var symmetry = Symmetry.canonicalizing(queens);
+        var entry = entries.get(queens.transform(symmetry));
+        var rules = entry == null ? null : entry.rules[symmetry.ordinal()];
+        if (rules == null) return null;
+        ruleHits++;
+        return rules.id();
+    }
+
+    /**
+     * Caches the board (indexed [column][row]) of the given queens and the
+     * rules restricted to them. The cache keeps its own copy of the rules.
+     */
+    public void put(QueenSet queens, int[][] board, BDD rules) {
+        var symmetry = Symmetry.canonicalizing(queens);
+        var key = queens.transform(symmetry);
+        var entry = entries.get(key);
+        if (entry == null) {
+            int n = queens.size();
+            var canonical = new int[n * n];
+            for (int column = 0; column < n; column++) {
+                for (int row = 0; row < n; row++) {
+                    canonical[symmetry.cell(column + row * n, n)] = board[column][row];
+                }
+            }
+            entry = new Entry(canonical);
+            entries.put(key, entry);
+        }
+
+        if (entry.rules[symmetry.ordinal()] == null) {
+            entry.rules[symmetry.ordinal()] = rules.id();
+            entry.kept++;
+            keptRules++;
+        }
+        evict(entry);
+    }
+
+    /**
+     * Drops the least recently used entries until the cache is within its
+     * bounds, keeping the given entry.
+     */
+    private void evict(Entry keep) {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while ((entries.size() > capacity || keptRules > maxRules) && eldest.hasNext()) {
+            var entry = eldest.next();
+            if (entry == keep) continue;
+            eldest.remove();
+            free(entry);
+        }
+    }
+
+    /** Drops every entry, freeing the rules kept. */
+    public void clear() {
+        for (var entry : entries.values()) free(entry);
+        entries.clear();
+    }
+
+    private void free(Entry entry) {
+        for (var rules : entry.rules) {
+            if (rules != null) rules.free();
+        }
+        keptRules -= entry.kept;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    /** The number of moves answered with cached rules. */
+    public long ruleHits() {
+        return ruleHits;
+    }
+
+    public int entries() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,218 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntConsumer;
+
+import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDFactory;
+
+/**
+ * Conjoins a list of constraints in a planned order.
+ *
+ * The result is the same for every order, but the intermediate BDDs are not:
+ * a left-deep chain drags one ever larger BDD through every step, while the
+ * other strategies keep the operands of most steps small.
+ *  left-deep       : ((c1 and c2) and c3) and ... (the order given),
+ *  balanced        : pairwise rounds, as a balanced tree over the order given,
+ *  support-grouped : a balanced tree over the constraints sorted by the mean
+ *                    level of their support, so constraints on nearby
+ *                    variables are conjoined first,
+ *  smallest-first  : always the two smallest BDDs so far (priority queue).
+ * If logging is on, the operand and result sizes of every step and the
+ * largest intermediate BDD are written to standard error.
+ */
+public class ConjunctionScheduler {
+    public enum Strategy { LEFT_DEEP, BALANCED, SUPPORT_GROUPED, SMALLEST_FIRST }
+
+    private final Strategy strategy;
+    private final boolean log;
+
+    private int steps, totalSteps;
+    private int largest;
+
+    public ConjunctionScheduler(Strategy strategy, boolean log) {
+        this.strategy = strategy;
+        this.log = log;
+    }
+
+    /**
+     * A scheduler configured by the system properties queens.schedule
+     * (left-deep, balanced, support-grouped or smallest-first; left-deep by
+     * default) and queens.schedule.log (false by default).
+     */
+    public static ConjunctionScheduler fromProperties() {
+        var name = System.getProperty("queens.schedule", "left-deep");
+        return new ConjunctionScheduler(strategyOf(name), Boolean.getBoolean("queens.schedule.log"));
+    }
+
+    public static Strategy strategyOf(String name) {
+        try {
+            return Strategy.valueOf(name.toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown conjunction schedule: " + name);
+        }
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * The conjunction of the constraints, which are consumed (freed).
+     */
+    public BDD conjoin(BDDFactory fact, List<BDD> constraints) {
+        return conjoin(fact, constraints, done -> { });
+    }
+
+    /**
+     * The conjunction of the constraints, which are consumed (freed),
+     * reporting the number of conjunctions done so far to progress after
+     * every step (there are one fewer than there are constraints).
+     */
+    public BDD conjoin(BDDFactory fact, List<BDD> constraints, IntConsumer progress) {
+        if (constraints.isEmpty()) return fact.one();
+        steps = 0;
+        totalSteps = constraints.size() - 1;
+        largest = 0;
+
+        BDD result;
+        switch (strategy) {
+            case BALANCED:
+                result = balanced(new ArrayList<>(constraints), progress);
+                break;
+            case SUPPORT_GROUPED:
+                result = balanced(bySupport(constraints), progress);
+                break;
+            case SMALLEST_FIRST:
+                result = smallestFirst(constraints, progress);
+                break;
+            default:
+                result = leftDeep(constraints, progress);
+        }
+
+        if (log && totalSteps > 0)
+            System.err.printf("%s: %d steps, largest intermediate %d nodes, result %d nodes%n",
+                strategy.name().toLowerCase(), steps, largest, result.nodeCount());
+        return result;
+    }
+
+    private BDD leftDeep(List<BDD> constraints, IntConsumer progress) {
+        var result = constraints.get(0);
+        for (int i = 1; i < constraints.size(); i++) {
+            result = step(result, constraints.get(i), progress);
+        }
+        return result;
+    }
+
+    private BDD balanced(List<BDD> level, IntConsumer progress) {
+        while (level.size() > 1) {
+            var next = new ArrayList<BDD>((level.size() + 1) / 2);
+            for (int i = 0; i + 1 < level.size(); i += 2) {
+                next.add(step(level.get(i), level.get(i + 1), progress));
+            }
+            if (level.size() % 2 == 1) next.add(level.get(level.size() - 1));
+            level = next;
+        }
+        return level.get(0);
+    }
+
+    /** A BDD in the priority queue, with its node count. */
+    private static class Sized {
+        final BDD bdd;
+        final int nodes;
+
+        Sized(BDD bdd) {
+            this.bdd = bdd;
+            this.nodes = bdd.nodeCount();
+        }
+    }
+
+    private BDD smallestFirst(List<BDD> constraints, IntConsumer progress) {
+        var queue = new PriorityQueue<Sized>(Comparator.comparingInt(s -> s.nodes));
+        for (var constraint : constraints) queue.add(new Sized(constraint));
+        while (queue.size() > 1) {
+            var a = queue.poll();
+            var b = queue.poll();
+            queue.add(new Sized(step(a.bdd, b.bdd, progress)));
+        }
+        return queue.poll().bdd;
+    }
+
+    /**
+     * The constraints sorted by the mean level of the variables they depend
+     * on.
+     */
+    private static List<BDD> bySupport(List<BDD> constraints) {
+        var sorted = new ArrayList<>(constraints);
+        var meanLevel = new IdentityHashMap<BDD, Double>();
+        for (var constraint : constraints) {
+            meanLevel.put(constraint, meanSupportLevel(constraint));
+        }
+        sorted.sort(Comparator.comparingDouble(meanLevel::get));
+        return sorted;
+    }
+
+    private static double meanSupportLevel(BDD bdd) {
+        // The support is a cube, a single path of positive literals
+        var cube = bdd.support();
+        long sum = 0;
+        int count = 0;
+        while (!cube.isOne() && !cube.isZero()) {
+            sum += cube.level();
+            count++;
+            var next = cube.high();
+            cube.free();
+            cube = next;
+        }
+        cube.free();
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /** Conjoins a and b, consuming both. */
+    private BDD step(BDD a, BDD b, IntConsumer progress) {
+        int aNodes = log ? a.nodeCount() : 0;
+        int bNodes = log ? b.nodeCount() : 0;
+        var result = a.andWith(b);
+        steps++;
+
+        if (log) {
+            int nodes = result.nodeCount();
+            largest = Math.max(largest, nodes);
+            System.err.printf("%s step %d/%d: %d and %d -> %d nodes (%d live)%n",
+                strategy.name().toLowerCase(), steps, totalSteps, aNodes, bNodes, nodes,
+                result.getFactory().getNodeNum());
+        }
+        progress.accept(steps);
+        return result;
+    }
+
+    /**
+     * Compiles the rules with every strategy and reports the peak and live
+     * nodes and the time, to compare the strategies (the steps and the
+     * largest intermediate BDDs are written to standard error). Run with
+     * queens.arena.free=false to see the peaks without freeing temporaries.
+     * Valid arguments: size ...
+     */
+    public static void main(String[] args) {
+        var provisioner = FactoryProvisioner.fromProperties();
+        System.out.printf("%-5s %-16s %12s %12s %12s %10s%n", "size", "strategy", "rule nodes", "peak nodes", "live nodes", "ms");
+        for (var arg : args) {
+            int size = Integer.parseInt(arg);
+            for (var strategy : Strategy.values()) {
+                var fact = provisioner.provision(size);
+                fact.setVarNum(size * size);
+
+                long start = System.nanoTime();
+                var compiler = new RuleCompiler(fact, size, new ConjunctionScheduler(strategy, true));
+                var rules = compiler.compile();
+                long elapsed = System.nanoTime() - start;
+
+                System.out.printf("%-5d %-16s %12d %12d %12d %10.1f%n", size, strategy.name().toLowerCase().replace('_', '-'),
+                    rules.nodeCount(), compiler.getPeakNodes(), fact.getNodeNum(), elapsed / 1e6);
+                fact.done();
+            }
+        }
+    }
+}
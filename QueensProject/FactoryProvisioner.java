@@ -0,0 +1,196 @@
+import java.util.List;
+
+import net.sf.javabdd.BDDFactory;
+import net.sf.javabdd.JFactory;
+
+/**
+ * Sizes the BDD factory for a board size within a heap budget, instead of
+ * always allocating 2M nodes and 200K cache entries.
+ *
+ * The expected node demand comes from the growth curves below, measured by
+ * compiling the rules (RuleCompiler, row-major ordering) for sizes 4 to 9.
+ * Larger sizes are extrapolated with the growth of the last measured step.
+ * The node table starts at the expected peak, grows in steps of a quarter of
+ * it, and may never grow beyond what the budget allows (JFactory then fails
+ * with a BDDException, which exceeded turns into a clear error).
+ *
+ * While the rules are compiled (see monitor) the estimate is corrected after
+ * every family of rules, so the table grows in steps fitting the corrected
+ * demand. The estimate never fails a compilation on its own: only actually
+ * running out of the nodes the budget allows does.
+ */
+public class FactoryProvisioner {
+    // Bytes of a node in JFactory's node table (six ints), and of one cache
+    // slot over all its operation caches
+    static final int BYTES_PER_NODE = 24;
+    static final int BYTES_PER_CACHE_SLOT = 160;
+
+    private static final int MIN_NODES = 10_000;
+    private static final int FIRST_MEASURED_SIZE = 4;
+
+    // Room for the garbage left between two garbage collections
+    private static final int HEADROOM = 2;
+
+    // Live nodes once each family of rules is conjoined shard by shard (the
+    // rules so far and the garbage of the family), for sizes 4, 5, ..., 9
+    private static final List<String> FAMILIES = RuleCompiler.FAMILIES;
+    private static final long[][] MEASURED_NODES = {
+        { 145, 379, 1_015, 2_669, 6_915, 17_463 },                 // columns
+        { 431, 996, 2_981, 7_716, 21_627, 45_595 },                // horizontal
+        { 475, 1_096, 3_162, 8_002, 22_042, 46_280 },              // vertical
+        { 686, 1_853, 5_509, 16_190, 48_761, 144_988 },            // diagonal
+    };
+
+    private final long budgetBytes;
+
+    public FactoryProvisioner(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * A provisioner with the budget from the system property
+     * queens.heapBudget (in MB), half of the maximum heap by default.
+     */
+    public static FactoryProvisioner fromProperties() {
+        long defaultMb = Runtime.getRuntime().maxMemory() / 2 / (1024 * 1024);
+        return new FactoryProvisioner(Long.getLong("queens.heapBudget", defaultMb) * 1024 * 1024);
+    }
+
+    /**
+     * A provisioner whose factories may hold at most about the given number
+     * of nodes.
+     */
+    public static FactoryProvisioner forNodes(long nodes) {
+        return new FactoryProvisioner(bytesFor(nodes, cacheRatio(nodes)));
+    }
+
+    /**
+     * A new factory sized for the rules of the given board size.
+     */
+    public BDDFactory provision(int size) {
+        long expected = peakNodes(size, 1.0);
+        int ratio = cacheRatio(expected);
+        long maxNodes = maxNodes(ratio);
+
+        int nodes = (int) Math.max(MIN_NODES, Math.min(expected, maxNodes));
+        var fact = JFactory.init(nodes, Math.max(1_000, nodes / ratio));
+        fact.setCacheRatio(ratio);
+        fact.setMaxIncrease(Math.max(50_000, (int) Math.min(expected / 4, Integer.MAX_VALUE)));
+        fact.setMaxNodeNum((int) maxNodes);
+        return fact;
+    }
+
+    /**
+     * A new factory for one of the given number of workers building parts of
+     * the rules at once (see ParallelRuleCompiler). It starts small, as a
+     * part is much smaller than the rules, and the workers together may never
+     * grow beyond the budget.
+     */
+    public BDDFactory provisionWorker(int workers) {
+        int ratio = cacheRatio(MIN_NODES);
+        var fact = JFactory.init(MIN_NODES, MIN_NODES / ratio);
+        fact.setCacheRatio(ratio);
+        fact.setMaxIncrease(50_000);
+        fact.setMaxNodeNum((int) Math.max(MIN_NODES, maxNodes(ratio) / workers));
+        return fact;
+    }
+
+    /**
+     * Wraps progress so the estimate is corrected after every family of
+     * rules compiled in fact, by how far the nodes in use are from the curve
+     * at that point (never below half of it). The node table then grows in
+     * steps fitting the corrected estimate, up to the budget set by provision.
+     *
+     * When all constraints are conjoined at once, RuleCompiler reports every
+     * quarter of the conjunctions as the family "conjunction" instead; the
+     * quarters are compared with the curves of the families in turn, as
+     * there are no curves for those schedules.
+     */
+    public ICompileProgressListener monitor(BDDFactory fact, int size, ICompileProgressListener progress) {
+        return (family, compiled, total) -> {
+            int index = family.equals("conjunction")
+                ? compiled * FAMILIES.size() / total - 1
+                : FAMILIES.indexOf(family);
+            if (index >= 0) {
+                double scale = Math.max(0.5, (double) fact.getNodeNum() / (HEADROOM * expectedNodes(size, index)));
+                long expected = peakNodes(size, scale);
+                fact.setMaxIncrease(Math.max(50_000, (int) Math.min(expected / 4, Integer.MAX_VALUE)));
+            }
+            progress.familyCompiled(family, compiled, total);
+        };
+    }
+
+    /**
+     * The error to throw when compiling for the given size ran out of nodes.
+     */
+    public IllegalStateException exceeded(int size, RuntimeException cause) {
+        long expectedNodes = peakNodes(size, 1.0);
+        long neededMb = bytesFor(expectedNodes, cacheRatio(expectedNodes)) / (1024 * 1024);
+        return new IllegalStateException(String.format(
+            "The rules for a %dx%d board need more BDD nodes than the budget of %d MB allows "
+                + "(about %d MB expected; raise queens.heapBudget and -Xmx, or use QueensLogicBitboard)",
+            size, size, budgetBytes / (1024 * 1024), neededMb), cause);
+    }
+
+    /**
+     * The most nodes expected to be in use at once while compiling, with room
+     * for garbage, with the curves scaled by the given factor.
+     */
+    static long peakNodes(int size, double scale) {
+        long peak = 0;
+        for (int family = 0; family < FAMILIES.size(); family++) {
+            peak = Math.max(peak, expectedNodes(size, family));
+        }
+        return (long) Math.min(Long.MAX_VALUE / 4, HEADROOM * peak * scale);
+    }
+
+    /**
+     * The live nodes expected while conjoining the given family of rules,
+     * from the measured curves.
+     */
+    static long expectedNodes(int size, int family) {
+        var curve = MEASURED_NODES[family];
+        int index = size - FIRST_MEASURED_SIZE;
+        if (index < 0) return curve[0];
+        if (index < curve.length) return curve[index];
+
+        // Beyond the measurements, keep growing like the last step did
+        double growth = (double) curve[curve.length - 1] / curve[curve.length - 2];
+        double nodes = curve[curve.length - 1] * Math.pow(growth, index - curve.length + 1);
+        return (long) Math.min(nodes, Long.MAX_VALUE / 2);
+    }
+
+    /**
+     * Fewer cache slots per node for large tables, where the caches would
+     * otherwise take most of the memory.
+     */
+    static int cacheRatio(long nodes) {
+        return nodes < 1_000_000 ? 4 : 16;
+    }
+
+    private long maxNodes(int ratio) {
+        long perNode = BYTES_PER_NODE + BYTES_PER_CACHE_SLOT / ratio;
+        return Math.max(MIN_NODES, Math.min(Integer.MAX_VALUE, budgetBytes / perNode));
+    }
+
+    static long bytesFor(long nodes, int ratio) {
+        return nodes * (BYTES_PER_NODE + BYTES_PER_CACHE_SLOT / ratio);
+    }
+
+    /**
+     * Prints the provisioning for a range of sizes.
+     * Valid arguments: [from-to]
+     */
+    public static void main(String[] args) {
+        var range = (args.length > 0 ? args[0] : "4-14").split("-");
+        var provisioner = fromProperties();
+        System.out.printf("budget %d MB%n%4s %14s %8s %10s%n", provisioner.budgetBytes / (1024 * 1024),
+            "size", "expected nodes", "ratio", "MB");
+        for (int size = Integer.parseInt(range[0]); size <= Integer.parseInt(range[range.length - 1]); size++) {
+            long nodes = peakNodes(size, 1.0);
+            int ratio = cacheRatio(nodes);
+            System.out.printf("%4d %14d %8d %10d%s%n", size, nodes, ratio, bytesFor(nodes, ratio) / (1024 * 1024),
+                nodes > provisioner.maxNodes(ratio) ? "  exceeds budget" : "");
+        }
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Replays move scripts through an IQueensLogic without opening a window.
+ *
+ * A script has one command per line:
+ *  column row     : insertQueen(column, row),
+ *  remove c r     : removeQueen(c, r),
+ *  undo / redo    : (the last two need an IUndoableQueensLogic),
+ *  reset          : starts a new session on a freshly initialized board.
+ * Blank lines and lines starting with # are skipped.
+ *
+ * After every move the board is written to standard output, either in full
+ * (boards), as a CRC32 of its cells (digests, see PackedBoard.digest), as
+ * the cells the move changed (deltas, one "column row value" line per cell
+ * and a blank line after the move) or not at all (none). When the script is done the per-move latency
+ * percentiles and the throughput are written to standard error.
+ *
+ * The board is read from the packed bitsets of an IPackedQueensLogic, whose
+ * changes are reported by the logic itself; any other logic is mirrored into
+ * a PackedBoard from getBoard after every move, outside the timed moves. The
+ * changed cells are collected while a move runs and written after it, so the
+ * output is never part of the latencies.
+ */
+public class HeadlessDriver {
+    private final IQueensLogic logic;
+    private final int size;
+    private final String output;
+    private final PrintStream out;
+    private final IPackedBoard board;
+    private final PackedBoard mirror; // Null if the logic keeps a packed board itself
+    private final StringBuilder deltas = new StringBuilder(); // Written after the move, outside its time
+
+    private long[] latencies = new long[1024]; // Nanoseconds per move
+    private int moves;
+    private int sessions;
+    private long initNanos;
+
+    public HeadlessDriver(IQueensLogic logic, int size, String output, PrintStream out) {
+        if (!output.equals("boards") && !output.equals("digests") && !output.equals("deltas") && !output.equals("none"))
+            throw new IllegalArgumentException("Output must be boards, digests, deltas or none: " + output);
+        this.logic = logic;
+        this.size = size;
+        this.output = output;
+        this.out = out;
+
+        mirror = logic instanceof IPackedQueensLogic ? null : new PackedBoard();
+        board = mirror == null ? (IPackedQueensLogic) logic : mirror;
+        if (output.equals("deltas")) {
+            board.addCellChangeListener(new ICellChangeListener() {
+                public void cellChanged(int column, int row, int value) {
+                    deltas.append(column).append(' ').append(row).append(' ').append(value)
+                        .append(System.lineSeparator());
+                }
+
+                public void boardReplaced(int size) {
+                    deltas.append("# board ").append(size).append(System.lineSeparator());
+                }
+            });
+        }
+    }
+
+    /**
+     * Valid arguments: Logic [size] --script file|- [--output boards|digests|deltas|none]
+     * The script is read from standard input if file is -. The size must be
+     * greater than 4, like in the window, and at most what the logic supports.
+     */
+    public static void main(String[] args) throws Exception {
+        String logicName = null, script = null, output = "digests", sizeArg = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--script": script = value(args, ++i); break;
+                case "--output": output = value(args, ++i); break;
+                default:
+                    if (logicName == null) logicName = args[i];
+                    else sizeArg = args[i];
+            }
+        }
+        if (logicName == null || script == null)
+            usage("You have to give an IQueensLogic-implementation and a script");
+
+        // Checked like the window does, before the logic fails on it somewhere deep
+        int size = 8;
+        if (sizeArg != null) {
+            try {
+                size = Integer.parseInt(sizeArg);
+            } catch (NumberFormatException e) {
+                usage("Could not parse size value: " + sizeArg);
+            }
+        }
+        var logic = Queens.parseLogicParam(logicName);
+        int maxSize = logic instanceof QueensLogicBitboard ? QueensLogicBitboard.MAX_SIZE : Integer.MAX_VALUE;
+        if (size <= 4)
+            usage("Board size should be greater than 4");
+        if (size > maxSize)
+            usage("Board size of " + logicName + " should be at most " + maxSize);
+
+        var out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        var driver = new HeadlessDriver(logic, size, output, out);
+        try (var in = script.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(script))) {
+            long start = System.nanoTime();
+            driver.run(in);
+            out.flush();
+            driver.report(System.nanoTime() - start);
+        }
+    }
+
+    /** The value at index of the option before it, a usage error if missing. */
+    private static String value(String[] args, int index) {
+        if (index == args.length) usage("Missing value for " + args[index - 1]);
+        return args[index];
+    }
+
+    private static void usage(String errMsg) {
+        Queens.printHelp(errMsg);
+        System.exit(1);
+    }
+
+    /**
+     * Plays every command of the script, starting with a fresh board.
+     */
+    public void run(BufferedReader script) throws IOException {
+        reset();
+        String line;
+        int lineNumber = 0;
+        while ((line = script.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            var words = line.split("\\s+");
+            try {
+                play(words);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + line + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void play(String[] words) {
+        switch (words[0]) {
+            case "reset":
+                reset();
+                return;
+            case "undo": {
+                var undoable = undoable();
+                time(undoable::undo);
+                break;
+            }
+            case "redo": {
+                var undoable = undoable();
+                time(undoable::redo);
+                break;
+            }
+            case "remove": {
+                int column = coordinate(words, 1), row = coordinate(words, 2);
+                var undoable = undoable();
+                time(() -> undoable.removeQueen(column, row));
+                break;
+            }
+            default: {
+                int column = coordinate(words, 0), row = coordinate(words, 1);
+                time(() -> logic.insertQueen(column, row));
+            }
+        }
+        if (mirror != null) mirror.update(logic.getBoard());
+        write();
+    }
+
+    private void reset() {
+        long start = System.nanoTime();
+        logic.initializeBoard(size);
+        initNanos += System.nanoTime() - start;
+        sessions++;
+        if (output.equals("boards")) out.println("# session " + sessions);
+        if (mirror != null) mirror.reset(logic.getBoard());
+        flushDeltas();
+    }
+
+    /** Runs a move, recording how long it took. */
+    private void time(Runnable move) {
+        long start = System.nanoTime();
+        move.run();
+        long elapsed = System.nanoTime() - start;
+
+        if (moves == latencies.length) latencies = Arrays.copyOf(latencies, 2 * moves);
+        latencies[moves++] = elapsed;
+    }
+
+    private void write() {
+        switch (output) {
+            case "boards":
+                // Q = must have queen, . = may have queen, x = cannot have queen
+                var must = board.getMust();
+                var cannot = board.getCannot();
+                var line = new char[size];
+                for (int row = 0; row < size; row++) {
+                    for (int column = 0; column < size; column++) {
+                        int cell = PackedBoard.value(must, cannot, column + row * size);
+                        line[column] = cell == 1 ? 'Q' : cell == 0 ? '.' : 'x';
+                    }
+                    out.println(line);
+                }
+                out.println();
+                break;
+            case "digests":
+                out.printf("%08x%n", PackedBoard.digest(board));
+                break;
+            case "deltas":
+                flushDeltas();
+                out.println();
+                break;
+            default:
+        }
+    }
+
+    /** Writes the cells the listener collected since the last write. */
+    private void flushDeltas() {
+        out.print(deltas);
+        deltas.setLength(0);
+    }
+
+    /**
+     * Writes the latency percentiles and throughput to standard error.
+     */
+    public void report(long totalNanos) {
+        var sorted = Arrays.copyOf(latencies, moves);
+        Arrays.sort(sorted);
+        long moveNanos = 0;
+        for (var latency : sorted) moveNanos += latency;
+
+        System.err.printf("%d sessions, %d moves, init %.3f ms per session%n",
+            sessions, moves, initNanos / 1e6 / Math.max(1, sessions));
+        if (moves > 0) {
+            System.err.printf("move latency ms: p50 %.3f  p90 %.3f  p99 %.3f  max %.3f%n",
+                percentile(sorted, 50) / 1e6, percentile(sorted, 90) / 1e6,
+                percentile(sorted, 99) / 1e6, sorted[moves - 1] / 1e6);
+            System.err.printf("throughput: %.1f moves/s in moves, %.1f moves/s overall (%.3f s)%n",
+                moves / (moveNanos / 1e9), moves / (totalNanos / 1e9), totalNanos / 1e9);
+        }
+    }
+
+    /** The nearest-rank percentile of sorted latencies. */
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private IUndoableQueensLogic undoable() {
+        if (!(logic instanceof IUndoableQueensLogic))
+            throw new UnsupportedOperationException(logic.getClass().getName() + " cannot undo or remove queens");
+        return (IUndoableQueensLogic) logic;
+    }
+
+    private int coordinate(String[] words, int index) {
+        if (index >= words.length)
+            throw new IllegalArgumentException("Expected a column and a row");
+        int value = Integer.parseInt(words[index]);
+        if (value < 0 || value >= size)
+            throw new IllegalArgumentException("Outside the board: " + value);
+        return value;
+    }
+}
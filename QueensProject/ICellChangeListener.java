@@ -0,0 +1,19 @@
+/**
+ * Receives the changes of the board of an IPackedBoard, so only the cells that changed
+ * have to be processed.
+ */
+public interface ICellChangeListener {
+
+	/**
+	 * Called for every cell whose value changed with a move, on the thread making the move.
+	 * @param value The new value of the cell: 1 (must have queen), 0 (may have queen)
+	 *              or -1 (cannot have queen)
+	 */
+	public void cellChanged(int column, int row, int value);
+
+	/**
+	 * Called instead of cellChanged when the whole board was replaced, eg. when it is
+	 * initialized, possibly with a new size. Every cell should be read again.
+	 */
+	public void boardReplaced(int size);
+}
@@ -0,0 +1,13 @@
+/**
+ * Receives progress while the rules of the n-queen problem are compiled.
+ */
+public interface ICompileProgressListener {
+
+	/**
+	 * Called when a rule family (columns, horizontal, vertical or diagonal) has been compiled.
+	 * @param family The name of the family
+	 * @param compiled The number of families compiled so far
+	 * @param total The number of families in total
+	 */
+	public void familyCompiled(String family, int compiled, int total);
+}
@@ -0,0 +1,22 @@
+/**
+ * The board of the n-queen problem as two packed bitsets, "must" (a queen is or must be
+ * present) and "cannot" (a queen cannot be present); a cell in neither may have a queen.
+ * Cell (column, row) is bit column + row * size, ie. bit (cell % 64) of word (cell / 64).
+ * The arrays are read-only views kept up to date by their owner, so they can be read after
+ * every change without copying the board.
+ */
+public interface IPackedBoard {
+
+	public int getSize();
+
+	public long[] getMust();
+
+	public long[] getCannot();
+
+	/**
+	 * Registers a listener for the changes of every following move.
+	 */
+	public void addCellChangeListener(ICellChangeListener listener);
+
+	public void removeCellChangeListener(ICellChangeListener listener);
+}
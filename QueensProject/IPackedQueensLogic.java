@@ -0,0 +1,7 @@
+/**
+ * An interactive configurator of the n-queen problem that also keeps its board packed (see
+ * IPackedBoard) and reports the cells changed by every move, so consumers can process the
+ * changes only instead of polling getBoard.
+ */
+public interface IPackedQueensLogic extends IQueensLogic, IPackedBoard {
+}
@@ -0,0 +1,13 @@
+/**
+ * An interactive configurator of the n-queen problem that reports progress while initializing,
+ * so it can be initialized in the background while the board is already shown.
+ */
+public interface IProgressiveQueensLogic extends IQueensLogic {
+
+	/**
+	 * Initializes the board like initializeBoard(size), reporting the progress of compiling
+	 * the rules to the listener. The listener is called on the initializing thread, and is not
+	 * called at all if no compilation is needed.
+	 */
+	public void initializeBoard(int size, ICompileProgressListener progress);
+}
@@ -0,0 +1,68 @@
+/**
+ * Metrics of a BDD based configurator, exposed through JMX (see QueensMetrics).
+ * Latencies are in milliseconds; the engine figures are those sampled after the last operation.
+ */
+public interface IQueensMetrics {
+
+	/**
+	 * The engine answering the moves, and the number of times compiling the rules ran over
+	 * budget so another engine took over (see QueensLogicHybrid).
+	 */
+	public String getEngine();
+	public long getFallbacks();
+
+	/** Number of times the rules were compiled (not loaded from the cache). */
+	public long getComposeCount();
+	public double getComposeMeanMillis();
+	public double getComposeMaxMillis();
+
+	/** Number of insertQueen calls that placed a queen, including updating the board. */
+	public long getInsertCount();
+	public double getInsertMeanMillis();
+	public double getInsertP50Millis();
+	public double getInsertP99Millis();
+	public double getInsertMaxMillis();
+
+	/** Number of times the board was derived from the rules. */
+	public long getUpdateCount();
+	public double getUpdateMeanMillis();
+	public double getUpdateP50Millis();
+	public double getUpdateP99Millis();
+	public double getUpdateMaxMillis();
+
+	/** Number of nodes of the compiled rules, without the placed queens. */
+	public int getRuleNodes();
+
+	/** Number of nodes in use in the factory, and the size of its node table. */
+	public int getLiveNodes();
+	public int getNodeTableSize();
+
+	/** Number of garbage collections and dynamic reorderings of the node table. */
+	public long getGarbageCollections();
+	public long getReorderings();
+
+	/**
+	 * Lookups of boards in the board cache, the moves answered with cached rules and the
+	 * number of cached boards (see BoardCache).
+	 */
+	public long getBoardCacheHits();
+	public long getBoardCacheMisses();
+	public long getBoardCacheRuleHits();
+	public int getBoardCacheEntries();
+
+	/**
+	 * Cells checked against the rules by the per-cell domain modes (percell and incremental),
+	 * in total and on the last update, and the cells they did not have to check out of every
+	 * cell of every board, with an estimate of the time that saved.
+	 */
+	public long getDomainChecks();
+	public int getLastDomainChecks();
+	public long getSkippedDomainChecks();
+	public double getDomainCheckSavedMillis();
+
+	/** All of the above on one line. */
+	public String getSummary();
+
+	/** Clears the latency histograms. */
+	public void resetLatencies();
+}
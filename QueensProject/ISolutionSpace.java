@@ -0,0 +1,19 @@
+import java.util.stream.Stream;
+
+/**
+ * Access to the complete placements of queens that are still possible on the board.
+ */
+public interface ISolutionSpace {
+
+	/**
+	 * Returns the exact number of solutions that remain with the queens placed so far.
+	 */
+	public long countSolutions();
+
+	/**
+	 * Returns the remaining solutions one by one, where entry [c] of each solution is
+	 * the row of the queen in column c. The solutions are found lazily while the stream
+	 * is consumed, and closing the stream stops the enumeration.
+	 */
+	public Stream<int[]> solutions();
+}
@@ -0,0 +1,24 @@
+/**
+ * An interactive configurator of the n-queen problem where moves can be taken back.
+ */
+public interface IUndoableQueensLogic extends IQueensLogic {
+
+	/**
+	 * Removes a queen previously inserted at the specified position and updates the rest of
+	 * the board accordingly. Does nothing if no queen was inserted there.
+	 * Removing a queen is a move of its own, so it can be undone.
+	 */
+	public void removeQueen(int column, int row);
+
+	/**
+	 * Takes back the last move (inserting or removing a queen).
+	 * Returns false if there was nothing to undo.
+	 */
+	public boolean undo();
+
+	/**
+	 * Repeats the last move taken back by undo, as long as no other move was made since.
+	 * Returns false if there was nothing to redo.
+	 */
+	public boolean redo();
+}
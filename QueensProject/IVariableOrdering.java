@@ -0,0 +1,21 @@
+/**
+ * Strategy deciding the order of the BDD variables of a board.
+ *
+ * Variables keep their row-major ids (see QueensLogic32.posToVarId); an
+ * ordering only decides which variable sits at which level of the BDD, in
+ * the format expected by BDDFactory.setVarOrder.
+ */
+public interface IVariableOrdering {
+
+	/**
+	 * A name identifying the ordering, eg. in reports and cache entries.
+	 */
+	public String name();
+
+	/**
+	 * Returns the variable at each level for a board of the given size,
+	 * ie. a permutation of 0 .. size*size-1 where entry [l] is the variable
+	 * placed at level l.
+	 */
+	public int[] order(int size);
+}
@@ -0,0 +1,69 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram with one bucket per power of two nanoseconds.
+ *
+ * Recording is a few atomic increments and never allocates, so it can stay
+ * on all the time; percentiles are only accurate to within a factor of two
+ * (the upper bound of the bucket is reported). It may be read from another
+ * thread than the one recording.
+ */
+public class LatencyHistogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(64); // Bucket i > 0 holds [2^(i-1), 2^i) ns
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public double meanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : totalNanos.get() / 1e6 / n;
+    }
+
+    public double maxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    /**
+     * The latency below which the given percentage of the recorded
+     * latencies fall, rounded up to a power of two nanoseconds.
+     */
+    public double percentileMillis(double percent) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(percent / 100 * n);
+        long seen = 0;
+        for (int bucket = 0; bucket < 64; bucket++) {
+            seen += buckets.get(bucket);
+            if (seen >= rank && bucket < 63) return Math.min(1L << bucket, maxNanos.get()) / 1e6;
+        }
+        return maxMillis();
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < 64; bucket++) {
+            buckets.set(bucket, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.3f p50=%.3f p99=%.3f max=%.3f ms",
+            count(), meanMillis(), percentileMillis(50), percentileMillis(99), maxMillis());
+    }
+}
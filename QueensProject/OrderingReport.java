@@ -0,0 +1,59 @@
+import net.sf.javabdd.BDDFactory;
+
+/**
+ * Compiles the rules with every built-in variable ordering and reports the
+ * final node count, the live nodes in the factory afterwards and the compile
+ * time, to help pick the ordering that keeps memory lowest for a board size.
+ * The factories are sized by FactoryProvisioner like those of QueensLogic32.
+ */
+public class OrderingReport {
+
+    /**
+     * Valid arguments: [reorder] size ...
+     * reorder is an optional dynamic reordering method (eg. sift) applied
+     * while compiling, see VariableOrdering.reorderMethod.
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java OrderingReport [reorder] size ...");
+            System.exit(1);
+        }
+
+        int first = 0;
+        var reorder = BDDFactory.REORDER_NONE;
+        if (!Character.isDigit(args[0].charAt(0))) {
+            reorder = VariableOrdering.reorderMethod(args[0]);
+            first = 1;
+        }
+
+        var provisioner = FactoryProvisioner.fromProperties();
+        System.out.printf("%-5s %-13s %-8s %12s %12s %10s%n",
+            "size", "ordering", "reorder", "rule nodes", "live nodes", "ms");
+        for (int i = first; i < args.length; i++) {
+            int size = Integer.parseInt(args[i]);
+            for (var ordering : VariableOrdering.values()) {
+                report(provisioner, size, ordering, reorder);
+            }
+        }
+    }
+
+    private static void report(FactoryProvisioner provisioner, int size, IVariableOrdering ordering,
+            BDDFactory.ReorderMethod reorder) {
+        var fact = provisioner.provision(size);
+        fact.setVarNum(size * size);
+        fact.setVarOrder(ordering.order(size));
+        if (reorder != BDDFactory.REORDER_NONE) {
+            fact.varBlockAll();
+            fact.autoReorder(reorder);
+        }
+
+        long start = System.nanoTime();
+        var rules = new RuleCompiler(fact, size).compile();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-5d %-13s %-8s %12d %12d %10.1f%n",
+            size, ordering.name().toLowerCase(), reorder.toString().toLowerCase(),
+            rules.nodeCount(), fact.getNodeNum(), elapsed / 1e6);
+        fact.done();
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * A board kept as packed must/cannot bitsets (see IPackedBoard), which
+ * reports every cell that changes to its listeners.
+ *
+ * Logics implementing IPackedQueensLogic delegate to one, updating it from
+ * their own board after every move. Consumers of any other logic can keep
+ * one as a mirror, updated from getBoard, to get the same change events.
+ * Updating compares the board with the bitsets cell by cell, so it allocates
+ * nothing.
+ */
+public class PackedBoard implements IPackedBoard {
+    private int size;
+    private long[] must = new long[0];
+    private long[] cannot = new long[0];
+    private final List<ICellChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    // === Start of IPackedBoard === //
+    public int getSize() {
+        return size;
+    }
+
+    public long[] getMust() {
+        return must;
+    }
+
+    public long[] getCannot() {
+        return cannot;
+    }
+
+    public void addCellChangeListener(ICellChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeCellChangeListener(ICellChangeListener listener) {
+        listeners.remove(listener);
+    }
+    // === End of IPackedBoard === //
+
+    /**
+     * Replaces the whole board (indexed [column][row]), eg. after it was
+     * initialized, and tells the listeners to read it again.
+     */
+    public void reset(int[][] board) {
+        int size = board.length;
+        int words = (size * size + 63) >>> 6;
+        if (this.size != size) {
+            this.size = size;
+            must = new long[words];
+            cannot = new long[words];
+        } else {
+            Arrays.fill(must, 0);
+            Arrays.fill(cannot, 0);
+        }
+        for (int column = 0; column < size; column++) {
+            for (int row = 0; row < size; row++) {
+                set(column + row * size, board[column][row]);
+            }
+        }
+        for (var listener : listeners) listener.boardReplaced(size);
+    }
+
+    /**
+     * Brings the bitsets up to date with board (indexed [column][row], of
+     * the same size), reporting every cell that changed.
+     */
+    public void update(int[][] board) {
+        if (board.length != size) {
+            reset(board);
+            return;
+        }
+        for (int column = 0; column < size; column++) {
+            for (int row = 0; row < size; row++) {
+                int cell = column + row * size;
+                int value = board[column][row];
+                if (value == value(must, cannot, cell)) continue;
+
+                set(cell, value);
+                for (var listener : listeners) listener.cellChanged(column, row, value);
+            }
+        }
+    }
+
+    private void set(int cell, int value) {
+        long bit = 1L << cell;
+        int word = cell >>> 6;
+        must[word] = value == 1 ? must[word] | bit : must[word] & ~bit;
+        cannot[word] = value == -1 ? cannot[word] | bit : cannot[word] & ~bit;
+    }
+
+    /** The value (1, 0 or -1) of a cell of a packed board. */
+    public static int value(long[] must, long[] cannot, int cell) {
+        long bit = 1L << cell;
+        if ((must[cell >>> 6] & bit) != 0) return 1;
+        if ((cannot[cell >>> 6] & bit) != 0) return -1;
+        return 0;
+    }
+
+    /**
+     * A CRC32 of the cells of the board, column by column, each as its value
+     * plus one (0, 1 or 2), so two logics can be compared by their digests
+     * alone.
+     */
+    public static long digest(IPackedBoard board) {
+        int size = board.getSize();
+        var must = board.getMust();
+        var cannot = board.getCannot();
+        var crc = new CRC32();
+        for (int column = 0; column < size; column++) {
+            for (int row = 0; row < size; row++) {
+                crc.update(value(must, cannot, column + row * size) + 1);
+            }
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDFactory;
+import net.sf.javabdd.JFactory;
+
+/**
+ * Evaluates the domain of each variable with the per-cell check (two applies
+ * and an isZero per variable), spread over several cores.
+ *
+ * JFactory is not thread-safe, so every worker copies the rules into a
+ * factory of its own, through BDDFactory.save/load, and checks its share of
+ * the variables there. Worker factories are either kept between evaluations
+ * or created and discarded every time.
+ */
+public class ParallelDomainEvaluator {
+    private final int workers;
+    private final boolean reuseFactories;
+    private final ForkJoinPool pool;
+    private final ConcurrentLinkedQueue<BDDFactory> idleFactories = new ConcurrentLinkedQueue<>();
+
+    public ParallelDomainEvaluator(int workers, boolean reuseFactories) {
+        this.workers = workers;
+        this.reuseFactories = reuseFactories;
+        this.pool = new ForkJoinPool(workers);
+    }
+
+    /**
+     * An evaluator configured by the system properties queens.workers (the
+     * number of cores by default) and queens.reuseFactories (true by default).
+     */
+    public static ParallelDomainEvaluator fromProperties() {
+        int workers = Integer.getInteger("queens.workers", Runtime.getRuntime().availableProcessors());
+        boolean reuse = Boolean.parseBoolean(System.getProperty("queens.reuseFactories", "true"));
+        return new ParallelDomainEvaluator(Math.max(1, workers), reuse);
+    }
+
+    /**
+     * Stores the domain of each of the given variables of rul in domains
+     * (indexed by variable id), using the same values as the board.
+     */
+    public void evaluate(BDD rul, int[] vars, int[] domains) {
+        var fact = rul.getFactory();
+        var saved = save(fact, rul);
+        var order = new int[fact.varNum()];
+        for (int level = 0; level < order.length; level++) {
+            order[level] = fact.level2Var(level);
+        }
+        int nodes = rul.nodeCount();
+
+        var tasks = new ArrayList<Callable<Void>>();
+        for (int worker = 0; worker < workers; worker++) {
+            int first = worker;
+            tasks.add(() -> {
+                var workerFact = acquire(order, nodes);
+                try {
+                    var copy = workerFact.load(new BufferedReader(new StringReader(saved)));
+                    // Every worker takes every workers'th variable, so the
+                    // rows of the board are spread evenly
+                    for (int i = first; i < vars.length; i += workers) {
+                        domains[vars[i]] = domainOf(copy, vars[i]);
+                    }
+                    copy.free();
+                } finally {
+                    release(workerFact);
+                }
+                return null;
+            });
+        }
+
+        for (var result : pool.invokeAll(tasks)) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while evaluating domains", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Evaluating domains failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Returns 1 if the variable must be true, -1 if it cannot be true and 0
+     * if it may be either.
+     */
+    private static int domainOf(BDD rul, int var) {
+        var fact = rul.getFactory();
+        try (var arena = new BDDArena(fact)) {
+            if (arena.track(rul.and(arena.track(fact.nithVar(var)))).isZero()) return 1;
+            if (arena.track(rul.and(arena.track(fact.ithVar(var)))).isZero()) return -1;
+            return 0;
+        }
+    }
+
+    /**
+     * A factory with the given variable order, reused if possible. Idle
+     * factories of another board size are dropped, as a factory can not
+     * lose variables.
+     */
+    private BDDFactory acquire(int[] order, int nodes) {
+        var fact = reuseFactories ? idleFactories.poll() : null;
+        while (fact != null && fact.varNum() != order.length) {
+            fact.done();
+            fact = idleFactories.poll();
+        }
+        if (fact == null) {
+            fact = JFactory.init(Math.max(10_000, 4 * nodes), 10_000);
+            fact.setVarNum(order.length);
+        }
+        fact.setVarOrder(order);
+        return fact;
+    }
+
+    private void release(BDDFactory fact) {
+        if (reuseFactories)
+            idleFactories.add(fact);
+        else
+            fact.done();
+    }
+
+    private static String save(BDDFactory fact, BDD rul) {
+        var out = new StringWriter();
+        try (var writer = new BufferedWriter(out)) {
+            fact.save(writer, rul);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDException;
+import net.sf.javabdd.BDDFactory;
+
+/**
+ * Compiles the rules of the n-queen problem like RuleCompiler, building the
+ * shards of its left-deep schedule on several cores.
+ *
+ * Every shard (see RuleCompiler.shards) is compiled by a RuleCompiler in a
+ * factory of its own, with the variable order of the main factory, as
+ * JFactory is not thread-safe. The shards are copied into the main factory
+ * through BDDFactory.save/load and conjoined there in the same order as
+ * RuleCompiler does, while the next shards are being built. Progress is
+ * reported after every family like RuleCompiler, so FactoryProvisioner can
+ * still watch the demand.
+ *
+ * Only building the shards runs in parallel; conjoining them is done in the
+ * main factory. The worker factories are sized by the provisioner so that
+ * together they stay within its budget, and at most one shard per worker
+ * waits to be conjoined. A worker running out of nodes fails the compilation
+ * with its BDDException, like the main factory would.
+ *
+ * With any other schedule (see ConjunctionScheduler) all shards are built
+ * and loaded first, and then conjoined as that schedule plans, reporting
+ * every quarter of the conjunctions as the family "conjunction" like
+ * RuleCompiler. The schedule only orders the shards, not every constraint.
+ */
+public class ParallelRuleCompiler {
+    private final BDDFactory fact;
+    private final int size;
+    private final int workers;
+    private final FactoryProvisioner provisioner;
+    private final ConjunctionScheduler scheduler;
+    private int peakNodes;
+
+    /**
+     * A compiler using the schedule configured by the system properties, see
+     * ConjunctionScheduler.fromProperties.
+     */
+    public ParallelRuleCompiler(BDDFactory fact, int size, int workers, FactoryProvisioner provisioner) {
+        this(fact, size, workers, provisioner, ConjunctionScheduler.fromProperties());
+    }
+
+    public ParallelRuleCompiler(BDDFactory fact, int size, int workers, FactoryProvisioner provisioner,
+            ConjunctionScheduler scheduler) {
+        this.fact = fact;
+        this.size = size;
+        this.workers = workers;
+        this.provisioner = provisioner;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * A compiler using queens.workers cores (the number of cores by default).
+     */
+    public static ParallelRuleCompiler fromProperties(BDDFactory fact, int size, FactoryProvisioner provisioner) {
+        int workers = Integer.getInteger("queens.workers", Runtime.getRuntime().availableProcessors());
+        return new ParallelRuleCompiler(fact, size, Math.max(1, workers), provisioner);
+    }
+
+    /**
+     * Composes all rules into a single BDD, reporting each rule family to
+     * progress once it has been conjoined into the result.
+     */
+    public BDD compile(ICompileProgressListener progress) {
+        var order = new int[fact.varNum()];
+        for (int level = 0; level < order.length; level++) {
+            order[level] = fact.level2Var(level);
+        }
+
+        // Every shard, in the order they are conjoined
+        var compiler = new RuleCompiler(fact, size);
+        var families = new ArrayList<String>();
+        var shards = new ArrayList<List<int[]>>();
+        for (var family : RuleCompiler.FAMILIES) {
+            for (var shard : compiler.shards(family)) {
+                families.add(family);
+                shards.add(shard);
+            }
+        }
+
+        boolean leftDeep = scheduler.getStrategy() == ConjunctionScheduler.Strategy.LEFT_DEEP;
+        var loaded = new ArrayList<BDD>(); // Waiting for any other schedule
+
+        // Not a ForkJoinPool, which rethrows copies of the exceptions of the workers
+        var pool = Executors.newFixedThreadPool(workers);
+        try {
+            var pending = new ArrayDeque<Future<String>>();
+            int submitted = 0;
+            var rul = fact.one();
+            for (int shard = 0; shard < shards.size(); shard++) {
+                // Keeps every worker busy, without building far ahead of the conjunction
+                for (; submitted < shards.size() && submitted <= shard + workers; submitted++) {
+                    var family = families.get(submitted);
+                    var lines = shards.get(submitted);
+                    pending.add(pool.submit(() -> compileShard(order, family, lines)));
+                }
+
+                var next = load(await(pending.poll()));
+                if (leftDeep)
+                    rul = rul.andWith(next);
+                else
+                    loaded.add(next);
+                peakNodes = Math.max(peakNodes, fact.getNodeNum());
+
+                var family = families.get(shard);
+                if (leftDeep && (shard + 1 == shards.size() || !families.get(shard + 1).equals(family)))
+                    progress.familyCompiled(family, RuleCompiler.FAMILIES.indexOf(family) + 1, RuleCompiler.FAMILIES.size());
+            }
+            if (leftDeep) return rul;
+
+            rul.free();
+            int steps = loaded.size() - 1;
+            return scheduler.conjoin(fact, loaded, done -> {
+                peakNodes = Math.max(peakNodes, fact.getNodeNum());
+                // Reported like RuleCompiler, every quarter of the conjunctions
+                if (done * 4 / steps != (done - 1) * 4 / steps)
+                    progress.familyCompiled("conjunction", done * 4 / steps, 4);
+            });
+        } finally {
+            // Stops the shards not started yet if conjoining failed
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * The largest number of nodes in use in the main factory seen while
+     * conjoining the shards.
+     */
+    public int getPeakNodes() {
+        return peakNodes;
+    }
+
+    /**
+     * Compiles a shard of the lines of a family in a factory of its own,
+     * returning it saved.
+     */
+    private String compileShard(int[] order, String family, List<int[]> lines) {
+        var worker = provisioner.provisionWorker(workers);
+        try {
+            worker.setVarNum(order.length);
+            worker.setVarOrder(order);
+            var shard = new RuleCompiler(worker, size).family(family, lines);
+
+            var saved = new StringWriter();
+            try (var out = new BufferedWriter(saved)) {
+                worker.save(out, shard);
+            }
+            return saved.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Writing to a string never fails
+        } finally {
+            worker.done();
+        }
+    }
+
+    private BDD load(String shard) {
+        try {
+            return fact.load(new BufferedReader(new StringReader(shard)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Reading from a string never fails
+        }
+    }
+
+    private static String await(Future<String> shard) {
+        try {
+            return shard.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while compiling rules", e);
+        } catch (ExecutionException e) {
+            // A worker out of nodes is reported like the main factory running out
+            if (e.getCause() instanceof BDDException) throw (BDDException) e.getCause();
+            throw new IllegalStateException("Compiling rules failed", e.getCause());
+        }
+    }
+
+    /**
+     * Compiles the rules with RuleCompiler and with queens.workers cores and
+     * reports the peak and live nodes of the main factory and the time.
+     * Valid arguments: size ...
+     */
+    public static void main(String[] args) {
+        var provisioner = FactoryProvisioner.fromProperties();
+        System.out.printf("%-5s %-10s %12s %12s %12s %10s%n", "size", "compiler", "rule nodes", "peak nodes", "live nodes", "ms");
+        for (var arg : args) {
+            int size = Integer.parseInt(arg);
+            for (boolean parallel : new boolean[] { false, true }) {
+                var fact = provisioner.provision(size);
+                fact.setVarNum(size * size);
+
+                long start = System.nanoTime();
+                BDD rules;
+                int peak;
+                if (parallel) {
+                    var compiler = fromProperties(fact, size, provisioner);
+                    rules = compiler.compile((family, compiled, total) -> { });
+                    peak = compiler.getPeakNodes();
+                } else {
+                    var compiler = new RuleCompiler(fact, size);
+                    rules = compiler.compile();
+                    peak = compiler.getPeakNodes();
+                }
+                long elapsed = System.nanoTime() - start;
+
+                System.out.printf("%-5d %-10s %12d %12d %12d %10.1f%n", size, parallel ? "parallel" : "serial",
+                    rules.nodeCount(), peak, fact.getNodeNum(), elapsed / 1e6);
+                fact.done();
+            }
+        }
+    }
+}
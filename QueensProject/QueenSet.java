@@ -0,0 +1,75 @@
+import java.util.Arrays;
+
+/**
+ * An immutable set of queens on a board of a given size, as a bitset over
+ * the cells (column + row * size). Usable as a map key.
+ */
+public final class QueenSet implements Comparable<QueenSet> {
+    private final int size;
+    private final long[] bits;
+
+    private QueenSet(int size, long[] bits) {
+        this.size = size;
+        this.bits = bits;
+    }
+
+    /** The queens on the given cells. */
+    public static QueenSet of(int size, int[] cells) {
+        var bits = new long[(size * size + 63) / 64];
+        for (int cell : cells) {
+            bits[cell >>> 6] |= 1L << cell;
+        }
+        return new QueenSet(size, bits);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int cell) {
+        return (bits[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /** The queens moved by the given symmetry. */
+    public QueenSet transform(Symmetry symmetry) {
+        if (symmetry == Symmetry.IDENTITY) return this;
+        var moved = new long[bits.length];
+        for (int word = 0; word < bits.length; word++) {
+            for (long rest = bits[word]; rest != 0; rest &= rest - 1) {
+                int cell = symmetry.cell(word * 64 + Long.numberOfTrailingZeros(rest), size);
+                moved[cell >>> 6] |= 1L << cell;
+            }
+        }
+        return new QueenSet(size, moved);
+    }
+
+    /** Orders sets of the same size by their bits, highest cell first. */
+    public int compareTo(QueenSet other) {
+        if (size != other.size) return Integer.compare(size, other.size);
+        for (int word = bits.length - 1; word >= 0; word--) {
+            if (bits[word] != other.bits[word]) return Long.compareUnsigned(bits[word], other.bits[word]);
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof QueenSet)) return false;
+        var other = (QueenSet) o;
+        return size == other.size && Arrays.equals(bits, other.bits);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * size + Arrays.hashCode(bits);
+    }
+
+    @Override
+    public String toString() {
+        var cells = new StringBuilder();
+        for (int cell = 0; cell < size * size; cell++) {
+            if (contains(cell)) cells.append(cells.length() == 0 ? "" : ",").append(cell);
+        }
+        return "QueenSet[" + size + ": " + cells + "]";
+    }
+}
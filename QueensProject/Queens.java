@@ -1,5 +1,8 @@
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.*;
 
@@ -15,7 +18,13 @@ public class Queens {
      * Valid arguments: Logic size 
      * Standard values for size (length of square board) is 8. Should be greater than 4
      */
-	public static void main(String[] args) {
+	public static void main(String[] args) throws Exception {
+		// Replaying a script needs no window, see HeadlessDriver
+		if (Arrays.asList(args).contains("--script")) {
+			HeadlessDriver.main(args);
+			return;
+		}
+
 		boolean err = args.length < 1;
         String errMsg = "You have to atleast one argument (an IQueensLogic-implementation)";
 
@@ -64,33 +73,62 @@ public class Queens {
            	System.exit(1);
         }
 
-		//Initializing the logic
-		logic.initializeBoard(size);
-
 		try {
-			// Setup of the frame containing the game
-			QueensGUI g = new QueensGUI(logic);
+			// Setup of the frame containing the game, shown before the logic is ready
+			QueensGUI g = new QueensGUI(logic, size);
 			JFrame f = new JFrame();
 			f.setSize(200 + size*100, 200 + size*100);
 			f.setTitle("n-queens Puzzle");
 			f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 			f.getContentPane().add(g);
 			f.setVisible(true);
+
+			//Initializing the logic in the background
+			initializeInBackground(logic, size, g);
 		}
 	    catch (IOException e){
 	      	errMsg = "Images not found at " + System.getProperty("user.dir") + "\\imgs";
 	       	err = true;
 	    }
 	}
+
+	/**
+	 * Initializes the logic on a background thread, showing the progress of compiling
+	 * the rules on the board and making it interactive once the logic is ready.
+	 */
+	private static void initializeInBackground(IQueensLogic logic, int size, QueensGUI g) {
+		ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "queens-init");
+			t.setDaemon(true);
+			return t;
+		});
+		executor.execute(() -> {
+			try {
+				if (logic instanceof IProgressiveQueensLogic) {
+					((IProgressiveQueensLogic) logic).initializeBoard(size, (family, compiled, total) ->
+						SwingUtilities.invokeLater(() ->
+							g.setStatus("Compiling rules: " + family + " (" + compiled + "/" + total + ")")));
+				} else {
+					logic.initializeBoard(size);
+				}
+				SwingUtilities.invokeLater(g::setReady);
+			} catch (RuntimeException | Error e) {
+				e.printStackTrace();
+				SwingUtilities.invokeLater(() -> g.setStatus("Initialization failed: " + e));
+			}
+		});
+		executor.shutdown();
+	}
 	
     /**
      * Printing error and help-message
      */
     public static void printHelp(String errMsg) {
     	System.err.println(errMsg);
-    	System.err.println("Usage: java QueensLogic [size]");
+    	System.err.println("Usage: java QueensLogic [size] [--script file|- [--output boards|digests|deltas|none]]");
     	System.err.println("\tQueensLogic\t\t- specifies a class implementing IQueensLogic");
     	System.err.println("\tsize\t\t - Must be an integer greater or equal to 5. Defaults to 8.");
+    	System.err.println("\t--script\t - Replays the moves in file (- for stdin) without a window, see HeadlessDriver.");
     }
     
     /**
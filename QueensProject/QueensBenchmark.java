@@ -0,0 +1,178 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks the IQueensLogic implementations.
+ *
+ * For every logic and board size it measures
+ *  init   : constructing the logic and calling initializeBoard,
+ *  insert : a single insertQueen on a freshly initialized board,
+ *  game   : a full game, clicking the first free cell until none is left.
+ * Besides the time per operation it records the bytes allocated by the
+ * benchmark thread, the number of garbage collections and, for the BDD
+ * based logics, the number of nodes in use in the factory at the end of the
+ * run (for QueensLogicZDD, the nodes in its table) and, for QueensLogic32, the most nodes in use while compiling (sampled
+ * by RuleCompiler).
+ *
+ * The rule cache is disabled so init always measures the compilation.
+ */
+public class QueensBenchmark {
+    private static final String[] DEFAULT_LOGICS = { "QueensLogic32", "QueensLogic32v2", "QueensLogicZDD", "PrimitiveLogic" };
+
+    private static final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static int warmup = 2;
+    private static int iterations = 5;
+    private static long budgetMillis = 10_000;
+
+    /** One of the measured operations. */
+    private interface Benchmark {
+        /** Runs one operation, returning the logic so its factory can be sampled. */
+        IQueensLogic run(String logic, int size, Timer timer) throws Exception;
+    }
+
+    /** Accumulates the time and allocations of the measured part of an operation. */
+    private static class Timer {
+        long start, total, startAllocated, allocated;
+        void start() {
+            startAllocated = allocatedBytes();
+            start = System.nanoTime();
+        }
+        void stop() {
+            total += System.nanoTime() - start;
+            allocated += allocatedBytes() - startAllocated;
+        }
+    }
+
+    /**
+     * Valid arguments: [--warmup n] [--iterations n] [--budget ms] [--sizes from-to] [Logic ...]
+     * Defaults to all logics and sizes 5 through 12.
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("queens.cache", "false");
+
+        int fromSize = 5, toSize = 12;
+        var logics = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--warmup":     warmup = Integer.parseInt(args[++i]); break;
+                case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+                case "--budget":     budgetMillis = Long.parseLong(args[++i]); break;
+                case "--sizes":
+                    var range = args[++i].split("-");
+                    fromSize = Integer.parseInt(range[0]);
+                    toSize = Integer.parseInt(range[range.length - 1]);
+                    break;
+                default: logics.add(args[i]);
+            }
+        }
+        if (logics.isEmpty()) logics.addAll(List.of(DEFAULT_LOGICS));
+
+        System.out.printf("%-16s %4s %-7s %5s %12s %12s %14s %5s %12s %12s%n",
+            "logic", "size", "bench", "ops", "mean ms", "min ms", "alloc KB/op", "gcs", "final nodes", "compile peak");
+        for (var logic : logics) {
+            for (int size = fromSize; size <= toSize; size++) {
+                measure(logic, size, "init", QueensBenchmark::init);
+                measure(logic, size, "insert", QueensBenchmark::insert);
+                measure(logic, size, "game", QueensBenchmark::game);
+            }
+        }
+    }
+
+    private static IQueensLogic init(String logic, int size, Timer timer) throws Exception {
+        timer.start();
+        var l = Queens.parseLogicParam(logic);
+        l.initializeBoard(size);
+        timer.stop();
+        return l;
+    }
+
+    private static IQueensLogic insert(String logic, int size, Timer timer) throws Exception {
+        var l = Queens.parseLogicParam(logic);
+        l.initializeBoard(size);
+        var cell = firstFreeCell(l.getBoard());
+        timer.start();
+        l.insertQueen(cell[0], cell[1]);
+        timer.stop();
+        return l;
+    }
+
+    private static IQueensLogic game(String logic, int size, Timer timer) throws Exception {
+        var l = Queens.parseLogicParam(logic);
+        l.initializeBoard(size);
+        timer.start();
+        int[] cell;
+        while ((cell = firstFreeCell(l.getBoard())) != null) {
+            l.insertQueen(cell[0], cell[1]);
+        }
+        timer.stop();
+        return l;
+    }
+
+    private static void measure(String logic, int size, String name, Benchmark benchmark) throws Exception {
+        var timer = new Timer();
+        for (int i = 0; i < warmup; i++) {
+            benchmark.run(logic, size, timer);
+        }
+
+        long min = Long.MAX_VALUE;
+        long total = 0;
+        long finalNodes = -1;
+        long compilePeak = -1;
+        int ops = 0;
+        long gcsBefore = gcCount();
+        timer.allocated = 0;
+        long deadline = System.nanoTime() + budgetMillis * 1_000_000;
+
+        // Always run at least one iteration, even if it exceeds the budget
+        while (ops < iterations && (ops == 0 || System.nanoTime() < deadline)) {
+            timer.total = 0;
+            var l = benchmark.run(logic, size, timer);
+            min = Math.min(min, timer.total);
+            total += timer.total;
+            ops++;
+
+            finalNodes = Math.max(finalNodes, finalNodesOf(l));
+            if (l instanceof QueensLogic32)
+                compilePeak = Math.max(compilePeak, ((QueensLogic32) l).getCompilePeakNodes());
+        }
+
+        System.out.printf("%-16s %4d %-7s %5d %12.3f %12.3f %14.1f %5d %12s %12s%n",
+            logic, size, name, ops, total / 1e6 / ops, min / 1e6, timer.allocated / 1024.0 / ops,
+            gcCount() - gcsBefore, finalNodes < 0 ? "-" : Long.toString(finalNodes),
+            compilePeak < 0 ? "-" : Long.toString(compilePeak));
+    }
+
+    /** The nodes in use by the logic at the end of a run, or -1 if it has none. */
+    private static long finalNodesOf(IQueensLogic logic) {
+        if (logic instanceof QueensLogic32) return ((QueensLogic32) logic).getFactory().getNodeNum();
+        if (logic instanceof QueensLogic32v2) return ((QueensLogic32v2) logic).getFactory().getNodeNum();
+        if (logic instanceof QueensLogicZDD) return ((QueensLogicZDD) logic).getNodeNum();
+        return -1;
+    }
+
+    /** The first cell (as {column, row}) that may still get a queen, or null. */
+    private static int[] firstFreeCell(int[][] board) {
+        for (int row = 0; row < board.length; row++) {
+            for (int column = 0; column < board.length; column++) {
+                if (board[column][row] == 0) return new int[] { column, row };
+            }
+        }
+        return null;
+    }
+
+    private static long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+        }
+        return count;
+    }
+}
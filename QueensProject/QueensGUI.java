@@ -2,6 +2,7 @@ import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 
@@ -20,13 +21,39 @@ public class QueensGUI extends JComponent implements MouseListener
 	final int 			imgSize = 100; // Size of images to draw board
 	
 	private IQueensLogic logic; // The logic that keeps track of what is legal or not	
+	private int size;			// Size of the board, known before the logic is ready
+	private boolean ready;		// Whether the logic is initialized and can take clicks
+	private String status = "Compiling rules...";
 	
 	// Images for drawing the board
 	private Image 		part, queen, invalid, backgroundW, backgroundB;
 	private Image 		border_left,border_right,border_top,border_bottom;
 	private Image 		corner_left_top, corner_left_bottom,corner_right_top,corner_right_bottom;
+
+	// The whole board as last drawn, and the state of each cell in it. Only
+	// cells whose state changed are drawn again, the rest is copied as is.
+	private BufferedImage frame;
+	private Graphics canvas;	// Draws into the frame
+	private int[][] drawn;
+	private Rectangle dirty;	// Area of the frame drawn since it was last repainted
+
+	// The packed board of the logic if it reports its changes, so the board is never polled
+	private IPackedBoard packed;
 	
+	/**
+	 * Shows the board of an initialized logic.
+	 */
 	public QueensGUI(IQueensLogic logic)  throws IOException {
+		this(logic, logic.getBoard().length);
+		setReady();
+	}
+
+	/**
+	 * Shows an empty board of the given size with a "compiling" overlay until
+	 * setReady is called, so the logic can be initialized in the background.
+	 */
+	public QueensGUI(IQueensLogic logic, int size)  throws IOException {
+		this.size = size;
 		part = ImageIO.read(new File("imgs/maze.png"));
 		queen = ImageIO.read(new File("imgs/queen.png"));
 		invalid = ImageIO.read(new File("imgs/invalid.png"));
@@ -44,26 +71,63 @@ public class QueensGUI extends JComponent implements MouseListener
 		
 		this.logic = logic;
 		this.addMouseListener(this);
+		this.setDoubleBuffered(true);
+		composeBoard();
+
+		if (logic instanceof IPackedQueensLogic) {
+			packed = (IPackedQueensLogic) logic;
+			packed.addCellChangeListener(new ICellChangeListener() {
+				public void cellChanged(int column, int row, int value) { if (ready) updateCell(column, row, value); }
+				public void boardReplaced(int size) { if (ready) drawPacked(); }
+			});
+		}
+
+		if (logic instanceof IUndoableQueensLogic) {
+			IUndoableQueensLogic undoable = (IUndoableQueensLogic) logic;
+			getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("control Z"), "undo");
+			getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("control Y"), "redo");
+			getActionMap().put("undo", new AbstractAction() {
+				public void actionPerformed(ActionEvent e) { if (ready && undoable.undo()) refresh(); }
+			});
+			getActionMap().put("redo", new AbstractAction() {
+				public void actionPerformed(ActionEvent e) { if (ready && undoable.redo()) refresh(); }
+			});
+		}
+	}
+
+	/**
+	 * Shows progress while the logic is being initialized. Must be called on the event dispatch thread.
+	 */
+	public void setStatus(String status) {
+		this.status = status;
+		repaint();
+	}
+
+	/**
+	 * Removes the overlay and lets the user place queens. Must be called on the event dispatch thread.
+	 */
+	public void setReady() {
+		this.ready = true;
+		if (packed != null) drawPacked();
+		repaint();
 	}
 
 	/*
-	 * Draws the current game board.
+	 * Composes the static board (borders, corners and empty squares) into the frame once.
 	 */
-	public void paint(Graphics g){
-		this.setDoubleBuffered(true);
-		Insets in = getInsets();               
-		g.translate(in.left, in.top);            
+	private void composeBoard() {
+		int cols = size;
+		int rows = size;
+		frame = new BufferedImage(imgSize*(cols+2), imgSize*(rows+2), BufferedImage.TYPE_INT_ARGB);
+		drawn = new int[cols][rows];
+		Graphics g = canvas = frame.createGraphics();
 
-		int[][] gameboard = logic.getBoard();
-		int cols = gameboard.length;
-		int rows = cols;
-		
         // draw borders
         for (int i = 0; i < cols; i++) {
             g.drawImage(border_left, 0, imgSize+imgSize*i, this);
-            g.drawImage(border_right, imgSize + gameboard.length*imgSize, imgSize + imgSize*i, this); 
+            g.drawImage(border_right, imgSize + cols*imgSize, imgSize + imgSize*i, this); 
             g.drawImage(border_top, imgSize+imgSize*i, 0, this);
-            g.drawImage(border_bottom, imgSize+imgSize*i, imgSize + gameboard.length*imgSize, this);
+            g.drawImage(border_bottom, imgSize+imgSize*i, imgSize + rows*imgSize, this);
         }
 		// draw corners
 		g.drawImage(corner_left_top, 0, 0, this);
@@ -71,38 +135,133 @@ public class QueensGUI extends JComponent implements MouseListener
 		g.drawImage(corner_right_top, imgSize + imgSize*cols, 0, this);
 		g.drawImage(corner_right_bottom, imgSize + imgSize*cols, imgSize + rows*imgSize, this);
 
-        // draw board
+        // draw empty board
 		for (int c = 0; c < cols; c++){
 			for (int r = 0; r < rows; r++){
-				int player = gameboard[c][r];
-                
-                if ( (c+r)%2 == 0 ) // white squares
-                	g.drawImage(backgroundW, imgSize+imgSize*c, imgSize+imgSize*r, this);
-                else // black squares
-                	g.drawImage(backgroundB, imgSize+imgSize*c, imgSize+imgSize*r, this);
-                
-                if ( player == 1 ) // queen stands on square
-					g.drawImage(queen, imgSize+imgSize*c, imgSize+imgSize*r, this);
-				if (player == -1) // no queen allowed
-					g.drawImage(invalid, imgSize+imgSize*c, imgSize+imgSize*r, this);
-				
-                g.drawImage(part, imgSize+imgSize*c, imgSize+imgSize*r, this);
+				drawCell(g, c, r, 0);
 			}
-		}    
+		}
+	}
+
+	/*
+	 * Draws a single square of the board with the given state.
+	 */
+	private void drawCell(Graphics g, int c, int r, int player) {
+        if ( (c+r)%2 == 0 ) // white squares
+        	g.drawImage(backgroundW, imgSize+imgSize*c, imgSize+imgSize*r, this);
+        else // black squares
+        	g.drawImage(backgroundB, imgSize+imgSize*c, imgSize+imgSize*r, this);
+        
+        if ( player == 1 ) // queen stands on square
+			g.drawImage(queen, imgSize+imgSize*c, imgSize+imgSize*r, this);
+		if (player == -1) // no queen allowed
+			g.drawImage(invalid, imgSize+imgSize*c, imgSize+imgSize*r, this);
+		
+        g.drawImage(part, imgSize+imgSize*c, imgSize+imgSize*r, this);
+	}
+
+	/*
+	 * Draws a cell into the frame if its state changed since it was last drawn, adding it to
+	 * the dirty area.
+	 */
+	private void updateCell(int c, int r, int player) {
+		if (drawn[c][r] == player) return;
+		drawCell(canvas, c, r, player);
+		drawn[c][r] = player;
+
+		int x = imgSize+imgSize*c, y = imgSize+imgSize*r;
+		if (dirty == null) {
+			dirty = new Rectangle(x, y, imgSize, imgSize);
+		} else {
+			dirty.add(x, y);
+			dirty.add(x+imgSize, y+imgSize);
+		}
+	}
+
+	/*
+	 * Draws every cell of the packed board that changed since it was last drawn.
+	 */
+	private void drawPacked() {
+		long[] must = packed.getMust(), cannot = packed.getCannot();
+		for (int c = 0; c < size; c++){
+			for (int r = 0; r < size; r++){
+				updateCell(c, r, PackedBoard.value(must, cannot, c + r*size));
+			}
+		}
+	}
+
+	/*
+	 * Brings the frame up to date with the logic and returns the area drawn since the last
+	 * repaint (or null if nothing changed). A packed logic has already reported its changes,
+	 * any other logic is polled for its board.
+	 */
+	private Rectangle updateFrame() {
+		if (!ready) return null;
+		if (packed == null) {
+			int[][] gameboard = logic.getBoard();
+			for (int c = 0; c < size; c++){
+				for (int r = 0; r < size; r++){
+					updateCell(c, r, gameboard[c][r]);
+				}
+			}
+		}
+		Rectangle changed = dirty;
+		dirty = null;
+		return changed;
+	}
+
+	/*
+	 * Brings the frame up to date with the logic and repaints only the changed area.
+	 */
+	private void refresh() {
+		Rectangle dirty = updateFrame();
+		if (dirty == null) return;
+		Insets in = getInsets();
+		repaint(dirty.x + in.left, dirty.y + in.top, dirty.width, dirty.height);
+	}
+
+	/*
+	 * Draws the current game board.
+	 */
+	public void paint(Graphics g){
+		Insets in = getInsets();               
+		g.translate(in.left, in.top);            
+
+		int cols = size;
+		int rows = cols;
+
+		// Only the changed cells are drawn, the rest is copied from the frame
+		updateFrame();
+		g.drawImage(frame, 0, 0, this);
+
+		// draw overlay while the logic is not ready
+		if (!ready) {
+			g.setColor(new Color(0, 0, 0, 160));
+			g.fillRect(imgSize, imgSize, imgSize*cols, imgSize*rows);
+			g.setColor(Color.WHITE);
+			g.setFont(g.getFont().deriveFont(Font.BOLD, 24f));
+			FontMetrics fm = g.getFontMetrics();
+			g.drawString(status, imgSize + (imgSize*cols - fm.stringWidth(status))/2, imgSize + imgSize*rows/2);
+		}
  	}
 
 	/*
 	 * When the user clicks on one of the board squares, the corresponding
-	 * column and row is parsed to the logic. 
+	 * column and row is parsed to the logic. A right click removes a queen
+	 * if the logic supports it (Ctrl+Z and Ctrl+Y undo and redo moves).
 	 */
 	public void mouseClicked(MouseEvent e){
+		if (!ready) return;
         int col = e.getX()/100 - 1;
         int row = e.getY()/100 - 1;
 
-        int size = logic.getBoard().length;
-		if ((col >= 0) && (col < size) && (row >= 0) && (row < size)) 
-			logic.insertQueen(col, row);
-		repaint();
+		if ((col >= 0) && (col < size) && (row >= 0) && (row < size)) {
+			if (SwingUtilities.isRightMouseButton(e) && logic instanceof IUndoableQueensLogic)
+				((IUndoableQueensLogic) logic).removeQueen(col, row);
+			else
+				logic.insertQueen(col, row);
+		}
+		refresh();
 	}
 
 	// Not used methods from the interface of MouseListener 
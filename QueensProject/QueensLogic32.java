@@ -1,26 +1,145 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDException;
 import net.sf.javabdd.BDDFactory;
-import net.sf.javabdd.JFactory;
 
-public class QueensLogic32 implements IQueensLogic {
+/**
+ * Interactive configurator for the n-queen problem backed by a BDD.
+ *
+ * The variable ordering is chosen with the system property queens.ordering
+ * (see VariableOrdering) and dynamic reordering while compiling the rules
+ * with queens.reorder (eg. sift).
+ *
+ * Every move keeps the previous rules and board on a bounded undo stack
+ * (queens.undo.limit moves, 100 by default), so undo and redo only swap
+ * snapshots and removing a queen starts over from the compiled rules
+ * instead of recompiling them.
+ *
+ * How the board is derived from the rules is chosen with queens.domain:
+ * extract (default) walks the rules once (see DomainExtractor), percell
+ * checks every cell on its own and parallel spreads the per-cell checks
+ * over several cores (see ParallelDomainEvaluator). The per-cell modes only
+ * check one cell of every set of cells that the rotations and reflections
+ * keeping the queens in place map onto each other (see Symmetry). Boards and
+ * their restricted rules are cached by the placed queens (see BoardCache),
+ * so revisiting a placement costs no BDD operations. As placing a queen only
+ * removes solutions, incremental only checks the cells that were still open
+ * before the queen was placed, after marking the cells it attacks; it checks
+ * every cell like percell after any other change.
+ *
+ * The board is also kept packed (see PackedBoard), reporting the cells every
+ * move changes to its listeners.
+ *
+ * The factory is sized for each board within a heap budget (see
+ * FactoryProvisioner), and latencies and engine figures are published
+ * through JMX (see QueensMetrics).
+ */
+public class QueensLogic32 implements IUndoableQueensLogic, IProgressiveQueensLogic, ISolutionSpace,
+        IPackedQueensLogic {
     private int size;
     private int[][] board; // 1 = Must have queen, 0 = May have queen, -1 = Cannot have queen
 
-    private BDDFactory fact = JFactory.init(2_000_000, 200_000);
-    private BDD rules;
+    private final FactoryProvisioner provisioner;
+    private BDDFactory fact;
+    private BDD rules;         // The compiled rules and the placed queens
+    private BDD compiledRules; // The compiled rules only
+    private int compilePeakNodes;
+    private int[] queens;      // Variables of the placed queens
+
+    private final int undoLimit = Integer.getInteger("queens.undo.limit", 100);
+    private final Deque<Snapshot> undoStack = new ArrayDeque<>();
+    private final Deque<Snapshot> redoStack = new ArrayDeque<>();
+
+    private RuleCache cache = RuleCache.fromProperties();
+    private IVariableOrdering ordering = VariableOrdering.fromProperties();
+    private BDDFactory.ReorderMethod reorder = VariableOrdering.reorderFromProperties();
+    private final boolean parallelCompile = Boolean.getBoolean("queens.parallelCompile");
+
+    private enum DomainMode { EXTRACT, PERCELL, PARALLEL, INCREMENTAL }
+    private final DomainMode domainMode =
+        DomainMode.valueOf(System.getProperty("queens.domain", "extract").toUpperCase());
+    private ParallelDomainEvaluator evaluator;
+    private final BoardCache boardCache = BoardCache.fromProperties();
+
+    private final QueensMetrics metrics = new QueensMetrics();
+    private final PackedBoard packed = new PackedBoard();
+
+    /**
+     * The state after a move. A snapshot owns its rules, and its board is
+     * never changed after it has been computed.
+     */
+    private static class Snapshot {
+        final BDD rules;
+        final int[][] board;
+        final int[] queens;
+
+        Snapshot(BDD rules, int[][] board, int[] queens) {
+            this.rules = rules;
+            this.board = board;
+            this.queens = queens;
+        }
+    }
+
+    public QueensLogic32() {
+        this(FactoryProvisioner.fromProperties());
+    }
+
+    /**
+     * A logic whose factories are sized by the given provisioner, eg. to
+     * compile within a smaller budget (see QueensLogicHybrid).
+     */
+    QueensLogic32(FactoryProvisioner provisioner) {
+        this.provisioner = provisioner;
+        QueensMetrics.register("QueensLogic32", metrics);
+    }
 
     // === Start of IQueensLogic === //
     public void initializeBoard(int size) {
+        initializeBoard(size, (family, compiled, total) -> { });
+    }
+
+    public void initializeBoard(int size, ICompileProgressListener progress) {
         this.size = size;
-        this.board = new int[size][size];
+        clearStack(undoStack);
+        clearStack(redoStack);
+        if (rules != null) rules.free();
+        if (compiledRules != null) compiledRules.free();
+        rules = compiledRules = null;
+        compilePeakNodes = 0;
+        if (boardCache != null) boardCache.clear();
+
+        // A factory sized for this board, as the node demand grows quickly with the size
+        if (fact != null) fact.done();
+        fact = provisioner.provision(size);
+        metrics.attach(fact);
 
         int nVars = size * size;
         fact.setVarNum(nVars);
-        
-        rules = composeRules();
+        fact.setVarOrder(ordering.order(size));
+
+        // Only compile the rules if they are not already cached
+        compiledRules = cache == null ? null : cache.load(fact, size, cacheKey());
+        if (compiledRules == null) {
+            long start = System.nanoTime();
+            compiledRules = composeRules(progress);
+            metrics.compose.record(System.nanoTime() - start);
+            if (cache != null) cache.store(fact, size, cacheKey(), compiledRules);
+        }
+        rules = compiledRules.id();
+        queens = new int[0];
+        metrics.rules(compiledRules);
 
         // Find the initial valid domains (due to the board size)
-        updateBoard(rules);
+        updateBoard(rules, -1);
+        packed.reset(board);
     }
 
     public int[][] getBoard() {
@@ -29,137 +148,246 @@ public class QueensLogic32 implements IQueensLogic {
 
     public void insertQueen(int column, int row) {
         if (board[column][row] != 0) return; // Guards against invalid moves
+        long start = System.nanoTime();
 
-        // Get the queen we just placed as a BDD
-        var queen = fact.ithVar(posToVarId(column, row));
+        var placed = Arrays.copyOf(queens, queens.length + 1);
+        placed[queens.length] = posToVarId(column, row);
 
-        // Add a rule that a queen must be placed in the chosen position for a
-        // solution to be valid.
-        // (It may have been more appropriate to use BDD.restrict, but we could
-        //  not get that approach to work the way we expected it to)
-        rules = rules.and(queen);
-        updateBoard(rules);
+        // A placement seen before already has its rules in the board cache
+        var next = cachedRules(placed);
+        if (next == null) {
+            // Add a rule that a queen must be placed in the chosen position for a
+            // solution to be valid.
+            // (It may have been more appropriate to use BDD.restrict, but we could
+            //  not get that approach to work the way we expected it to)
+            next = withQueen(rules, column, row);
+        }
+        makeMove(next, placed, posToVarId(column, row));
+        metrics.insert.record(System.nanoTime() - start);
     }
     // === End of IQueensLogic === //
 
+    // === Start of IUndoableQueensLogic === //
+    public void removeQueen(int column, int row) {
+        int var = posToVarId(column, row);
+        var remaining = Arrays.stream(queens).filter(q -> q != var).toArray();
+        if (remaining.length == queens.length) return; // No queen was placed here
+
+        // Start over from the compiled rules rather than recompiling them
+        var next = cachedRules(remaining);
+        if (next == null) {
+            next = compiledRules.id();
+            for (int q : remaining) {
+                next = next.andWith(fact.ithVar(q));
+            }
+        }
+        makeMove(next, remaining, -1);
+    }
+
+    public boolean undo() {
+        if (undoStack.isEmpty()) return false;
+        redoStack.push(currentSnapshot());
+        restore(undoStack.pop());
+        return true;
+    }
+
+    public boolean redo() {
+        if (redoStack.isEmpty()) return false;
+        pushUndo(currentSnapshot());
+        restore(redoStack.pop());
+        return true;
+    }
+    // === End of IUndoableQueensLogic === //
+
+    // === Start of ISolutionSpace === //
+    public long countSolutions() {
+        var vars = new int[size * size];
+        for (int var = 0; var < vars.length; var++) {
+            vars[var] = var;
+        }
+        var varSet = fact.makeSet(vars);
+        long count = Math.round(rules.satCount(varSet));
+        varSet.free();
+        return count;
+    }
+
     /**
-     * Composes all rules into a single BDD.
+     * Walks the paths of the current rules on demand (see SolutionIterator),
+     * so must be consumed on the thread that makes the moves.
      */
-    private BDD composeRules() {
-        // Jules are combined using conjunction, so the base case is true.
-        var rul = fact.one();
+    public Stream<int[]> solutions() {
+        var paths = new SolutionIterator(rules);
+        var placements = new Iterator<int[]>() {
+            public boolean hasNext() {
+                return paths.hasNext();
+            }
 
-        rul = rul.and(eachColumnMustHaveAtLeastOneQueen());
-        rul = rul.and(queensMustNotCaptureHorizontally());
-        rul = rul.and(queensMustNotCaptureVertically());
-        rul = rul.and(queensMustNotCaptureDiagonally());
+            public int[] next() {
+                var values = paths.next();
+                var placement = new int[size];
+                for (int column = 0; column < size; column++) {
+                    for (int row = 0; row < size; row++) {
+                        if (values[posToVarId(column, row)]) placement[column] = row;
+                    }
+                }
+                return placement;
+            }
+        };
+        return StreamSupport
+            .stream(Spliterators.spliteratorUnknownSize(placements, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(paths::cancel);
+    }
+    // === End of ISolutionSpace === //
 
-        return rul;
+    // === Start of IPackedBoard === //
+    public int getSize() {
+        return packed.getSize();
+    }
+
+    public long[] getMust() {
+        return packed.getMust();
+    }
+
+    public long[] getCannot() {
+        return packed.getCannot();
     }
 
-    // === Start of Rules === //
+    public void addCellChangeListener(ICellChangeListener listener) {
+        packed.addCellChangeListener(listener);
+    }
+
+    public void removeCellChangeListener(ICellChangeListener listener) {
+        packed.removeCellChangeListener(listener);
+    }
+    // === End of IPackedBoard === //
 
-    /*
-     * The horizonal, vertical and diagonal rules could easily have been one
-     * function by merging the inner loops, but we kept them seperate for
-     * clarity.
+    /**
+     * Makes the given rules and queens the current state, keeping the
+     * previous state for undo. A new move makes the redo stack obsolete.
+     * inserted is the variable of the queen the move placed, or -1 if the
+     * move did not just place a queen.
      */
+    private void makeMove(BDD next, int[] placed, int inserted) {
+        pushUndo(currentSnapshot());
+        clearStack(redoStack);
+
+        rules = next;
+        queens = placed;
+        updateBoard(rules, inserted);
+        packed.update(board);
+    }
+
+    private Snapshot currentSnapshot() {
+        return new Snapshot(rules, board, queens);
+    }
+
+    private void restore(Snapshot snapshot) {
+        rules = snapshot.rules;
+        board = snapshot.board;
+        queens = snapshot.queens;
+        metrics.sample(fact, boardCache);
+        packed.update(board);
+    }
 
     /**
-     * A BDD representing the rule that each column must have at least one queen.
+     * Pushes a snapshot on the undo stack, freeing the oldest one when the
+     * stack is full so the node table does not keep growing.
      */
-    private BDD eachColumnMustHaveAtLeastOneQueen() {
-        var rul = fact.one();
-        for (int column = 0; column < size; column++) {
-            var colRul = fact.zero();
-            for (int row = 0; row < size; row++) {
-                colRul = colRul.or(posToVar(column, row));
-            }
-            rul = rul.and(colRul);
+    private void pushUndo(Snapshot snapshot) {
+        undoStack.push(snapshot);
+        while (undoStack.size() > undoLimit) {
+            undoStack.removeLast().rules.free();
+        }
+    }
+
+    private void clearStack(Deque<Snapshot> stack) {
+        while (!stack.isEmpty()) {
+            stack.pop().rules.free();
         }
-        return rul;
     }
 
     /**
-     * A BDD representing the rule that queens must not be able to capture any other
-     * queen horizontally.
+     * The factory holding the rules, exposed for QueensBenchmark.
      */
-    private BDD queensMustNotCaptureHorizontally() {
-        var rul = fact.one();
-        for (int row = 0; row < size; row++) {
-            for (int column = 0; column < size; column++) {
-                var placedQueen = posToVar(column, row);
-                var notAllowed = fact.zero();
-                // Inner rule creation
-                for (int i = 0; i < size; i++) {
-                    if (i != column) {
-                        notAllowed = notAllowed.or(posToVar(i, row));
-                    }
-                }
-                // End of inner rule creation
-                rul = rul.and(placedQueen.imp(notAllowed.not()));
-            }
-        }
-        return rul;
+    BDDFactory getFactory() {
+        return fact;
     }
 
     /**
-     * A BDD representing the rule that queens must not be able to capture any other
-     * queen vertically.
+     * The most nodes in use while the rules were last compiled (0 if they
+     * were loaded from the cache), exposed for QueensBenchmark.
      */
-    private BDD queensMustNotCaptureVertically() {
-        var rul = fact.one();
-        for (int row = 0; row < size; row++) {
-            for (int column = 0; column < size; column++) {
-                var placedQueen = posToVar(column, row);
-                var notAllowed = fact.zero();
-                // Inner rule creation
-                for (int i = 0; i < size; i++) {
-                    if (i != row) {
-                        notAllowed = notAllowed.or(posToVar(column, i));
-                    }
-                }
-                // End of inner rule creation
-                rul = rul.and(placedQueen.imp(notAllowed.not()));
-            }
-        }
-        return rul;
+    int getCompilePeakNodes() {
+        return compilePeakNodes;
+    }
+
+    QueensMetrics getMetrics() {
+        return metrics;
     }
 
     /**
-     * A BDD representing the rule that queens must not be able to capture any other
-     * queen diagonally.
+     * Frees the rules and the factory, eg. after compiling them ran over
+     * budget. The logic must be initialized again before it is used.
      */
-    private BDD queensMustNotCaptureDiagonally() {
-        var rul = fact.one();
-        for (int row = 0; row < size; row++) {
-            for (int column = 0; column < size; column++) {
-                var placedQueen = posToVar(column, row);
-                var notAllowed = fact.zero();
-                // Inner rule creation
-                for (int c = 0; c < size; c++) {
-                    for (int r = 0; r < size; r++) {
-                        if (c != column && r != row && alignDiagonal(column, row, c, r)) {
-                            notAllowed = notAllowed.or(posToVar(c, r));
-                        }
-                    }
-                }
-                // End of inner rule creation
-                rul = rul.and(placedQueen.imp(notAllowed.not()));
+    void release() {
+        clearStack(undoStack);
+        clearStack(redoStack);
+        if (boardCache != null) boardCache.clear();
+        rules = compiledRules = null;
+        if (fact != null) fact.done();
+        fact = null;
+    }
+
+    /**
+     * Composes all rules into a single BDD.
+     * Each row, column and diagonal becomes a single cardinality constraint,
+     * see RuleCompiler. With queens.parallelCompile=true the families are
+     * built on several cores, see ParallelRuleCompiler.
+     */
+    private BDD composeRules(ICompileProgressListener progress) {
+        // Dynamic reordering is only used while compiling, as it would
+        // otherwise stall the clicks
+        boolean reordering = reorder != BDDFactory.REORDER_NONE;
+        if (reordering) {
+            fact.varBlockAll();
+            fact.autoReorder(reorder);
+        }
+
+        BDD rul;
+        try {
+            var monitored = provisioner.monitor(fact, size, progress);
+            if (parallelCompile) {
+                var compiler = ParallelRuleCompiler.fromProperties(fact, size, provisioner);
+                rul = compiler.compile(monitored);
+                compilePeakNodes = compiler.getPeakNodes();
+            } else {
+                var compiler = new RuleCompiler(fact, size);
+                rul = compiler.compile(monitored);
+                compilePeakNodes = compiler.getPeakNodes();
             }
+        } catch (BDDException e) {
+            // The node table reached the limit set from the heap budget
+            throw provisioner.exceeded(size, e);
         }
+
+        if (reordering)
+            fact.autoReorder(BDDFactory.REORDER_NONE);
         return rul;
     }
-    
-    /** Check if two positions align diagonally. */
-    private boolean alignDiagonal(int col1, int row1, int col2, int row2) {
-        return Math.abs(col1 - col2) == Math.abs(row1 - row2);
-    }
 
-    // === End ofRules === //
+    /**
+     * Identifies the ordering setup in the rule cache, since the stored
+     * variable order depends on both the ordering and the reordering.
+     */
+    private String cacheKey() {
+        var key = ordering.name().toLowerCase();
+        return reorder == BDDFactory.REORDER_NONE ? key : key + "+" + reorder.toString().toLowerCase();
+    }
 
     /**
      * Assign an incrementing variable to each position on the board.
+     * (This is only the numbering; the order of the variables in the BDD is
+     *  decided by the IVariableOrdering.)
      * Ie. for a 5x5 board:
      * <pre>
      *00 01 02 03 04
@@ -183,50 +411,153 @@ public class QueensLogic32 implements IQueensLogic {
     /**
      * Returns rul with the restriction that a queen must be placed at
      * (column, row). (technically a rule)
+     * The result is a new BDD owned by the caller.
      */
     private BDD withQueen(BDD rul, int column, int row) {
-        var queen = fact.ithVar(posToVarId(column, row));
-        return rul.and(queen);
+        try (var arena = new BDDArena(fact)) {
+            return rul.and(arena.track(posToVar(column, row)));
+        }
     }
 
     /**
      * Returns rul with the restriction that a queen cannot be placed at
      * (column, row). (technically a rule)
+     * The result is a new BDD owned by the caller.
      */
     private BDD withOutQueen(BDD rul, int column, int row) {
-        var queen = fact.nithVar(posToVarId(column, row));
-        return rul.and(queen);
+        try (var arena = new BDDArena(fact)) {
+            return rul.and(arena.track(fact.nithVar(posToVarId(column, row))));
+        }
     }
 
     /**
      * Check if the a queen can be placed at (column, row) within the current rules/state of the board,
      * returns 1 if a queen <i>must</i> be placed, returns -1 if a queen <i>can't</i> be placed
      * and returns 0 if it <i>might</i> be placed.
+     * (This costs two applies per cell, so by default updateBoard uses
+     *  DomainExtractor instead, see domains.)
      */
     private int validDomain(BDD rul, int column, int row) {
-        // We must place queen here
-        // (if not doing so would make the rules a contradiction)
-        if (withOutQueen(rul, column, row).isZero())
-            return 1;
-            
-        // We cannot place queen here
-        // (if doing so would make the rules a contradiction)
-        if (withQueen(rul, column, row).isZero())
-            return -1;
-        
-        // We *may* place queen here
-        return 0;
+        try (var arena = new BDDArena(fact)) {
+            // We must place queen here
+            // (if not doing so would make the rules a contradiction)
+            if (arena.track(withOutQueen(rul, column, row)).isZero())
+                return 1;
+
+            // We cannot place queen here
+            // (if doing so would make the rules a contradiction)
+            if (arena.track(withQueen(rul, column, row)).isZero())
+                return -1;
+
+            // We *may* place queen here
+            return 0;
+        }
     }
 
     /**
      * Update the board to represent the given rules (including restrictions
-     * for queen placement).
+     * for queen placement), which must be those of the current queens. The
+     * board is replaced rather than changed, as the previous one may be part
+     * of a snapshot. If inserted is not -1, the current board is the one
+     * before the queen on that variable was placed.
+     */
+    private void updateBoard(BDD rul, int inserted) {
+        long start = System.nanoTime();
+        var placed = QueenSet.of(size, queens);
+        var cached = boardCache == null ? null : boardCache.get(placed);
+        if (cached != null) {
+            board = cached;
+        } else {
+            var previous = board;
+            board = new int[size][size];
+            var domains = domains(rul, placed, inserted >= 0 ? previous : null, inserted);
+            for (int column = 0; column < size; column++) {
+                for (int row = 0; row < size; row++) {
+                    board[column][row] = domains[posToVarId(column, row)];
+                }
+            }
+        }
+        if (boardCache != null) boardCache.put(placed, board, rul);
+        metrics.update.record(System.nanoTime() - start);
+        metrics.sample(fact, boardCache);
+    }
+
+    /**
+     * The rules restricted to exactly the given queens if they are in the
+     * board cache, otherwise null.
+     */
+    private BDD cachedRules(int[] placed) {
+        return boardCache == null ? null : boardCache.rules(QueenSet.of(size, placed));
+    }
+
+    /**
+     * Finds the domain of every variable of rul, indexed by variable id.
+     * The per-cell modes only check the representative of every cell under
+     * the symmetries keeping the queens in place, and copy its domain to the
+     * cells it represents. previous is the board before the queen on the
+     * variable inserted was placed, or null if the move did not place one.
+     */
+    private int[] domains(BDD rul, QueenSet placed, int[][] previous, int inserted) {
+        switch (domainMode) {
+            case INCREMENTAL:
+            case PERCELL: {
+                long start = System.nanoTime();
+                var representative = Symmetry.representatives(Symmetry.stabilizer(placed), size);
+                var domains = new int[size * size];
+                if (domainMode == DomainMode.INCREMENTAL && previous != null) {
+                    markDecided(domains, previous, inserted);
+                }
+
+                int checks = 0;
+                for (int var = 0; var < domains.length; var++) {
+                    if (domains[var] != 0) continue; // Decided before this move, or attacked
+
+                    // A representative is never higher than the cells it represents
+                    if (representative[var] == var) {
+                        domains[var] = validDomain(rul, var % size, var / size);
+                        checks++;
+                    } else {
+                        domains[var] = domains[representative[var]];
+                    }
+                }
+                metrics.domainChecks(checks, domains.length - checks, System.nanoTime() - start);
+                return domains;
+            }
+            case PARALLEL: {
+                if (evaluator == null) evaluator = ParallelDomainEvaluator.fromProperties();
+                var representative = Symmetry.representatives(Symmetry.stabilizer(placed), size);
+                var domains = new int[size * size];
+                var vars = Arrays.stream(representative).distinct().toArray();
+                evaluator.evaluate(rul, vars, domains);
+                for (int var = 0; var < domains.length; var++) {
+                    domains[var] = domains[representative[var]];
+                }
+                return domains;
+            }
+            default:
+                // A single walk over rul finds the domain of every variable at once
+                return DomainExtractor.extract(rul);
+        }
+    }
+
+    /**
+     * Fills in the domains known without checking the rules after a queen
+     * was placed on the variable inserted. Placing a queen only removes
+     * solutions, so every cell that previous had decided keeps its domain,
+     * the queen's cell becomes 1 and every cell it attacks becomes -1. The
+     * cells left at 0 still have to be checked.
      */
-    private void updateBoard(BDD rul) {
+    private void markDecided(int[] domains, int[][] previous, int inserted) {
+        int queenColumn = inserted % size, queenRow = inserted / size;
         for (int column = 0; column < size; column++) {
             for (int row = 0; row < size; row++) {
-                board[column][row] = validDomain(rul, column, row);
+                int domain = previous[column][row];
+                if (domain == 0 && (column == queenColumn || row == queenRow
+                        || Math.abs(column - queenColumn) == Math.abs(row - queenRow)))
+                    domain = -1;
+                domains[posToVarId(column, row)] = domain;
             }
         }
+        domains[inserted] = 1;
     }
 }
@@ -1,21 +1,28 @@
 import net.sf.javabdd.BDD;
 import net.sf.javabdd.BDDFactory;
-import net.sf.javabdd.JFactory;
 
 public class QueensLogic32v2 implements IQueensLogic{
     private int size;		// Size of quadratic game board (i.e. size = #rows = #columns)
     private int[][] board;	// Content of the board. Possible values: 0 (empty), 1 (queen), -1 (no queen allowed)
-    private BDDFactory fact = JFactory.init(2_000_000, 200_000);
+    private final FactoryProvisioner provisioner = FactoryProvisioner.fromProperties();
+    private BDDFactory fact;
     private BDD[] vars;
-    private BDD zero = fact.zero();
-    private BDD one = fact.one();
-    private BDD rules = one;
+    private BDD zero;
+    private BDD one;
+    private BDD rules;
 
 
     public void initializeBoard(int size) {
         this.size = size;
         this.board = new int[size][size];
         
+        // A factory sized for this board
+        if (fact != null) fact.done();
+        fact = provisioner.provision(size);
+        zero = fact.zero();
+        one = fact.one();
+        rules = one;
+
         int nVars = size * size;
         fact.setVarNum(nVars);
 
@@ -24,8 +31,10 @@ public class QueensLogic32v2 implements IQueensLogic{
             vars[i] = fact.ithVar(i);
         }
 
-        rules = rules.and(eachColumnMustHaveAtLeastOneQueen());
-        rules = rules.and(queensMustNotCaptureHorizontally());
+        try (var arena = new BDDArena(fact)) {
+            rules = arena.track(eachColumnMustHaveAtLeastOneQueen())
+                .and(arena.track(queensMustNotCaptureHorizontally()));
+        }
     }
    
     public int[][] getBoard() {
@@ -36,6 +45,13 @@ public class QueensLogic32v2 implements IQueensLogic{
         board[column][row] = 1;
     }
 
+    /**
+     * The factory holding the rules, exposed for QueensBenchmark.
+     */
+    BDDFactory getFactory() {
+        return fact;
+    }
+
     private int posToVarId(int column, int row) {
         return column + row * size;
     }
@@ -46,12 +62,15 @@ public class QueensLogic32v2 implements IQueensLogic{
         return vars[posToVarId(column, row)];
     }
 
+    // Both return a new BDD owned by the caller
     private BDD withQueenAt(BDD rules, int column, int row) {
         return rules.restrict(posToVar(column, row));
     }
 
     private BDD withNotQueenAt(BDD rules, int column, int row) {
-        return rules.restrict(posToVar(column, row).not());
+        try (var arena = new BDDArena(fact)) {
+            return rules.restrict(arena.track(posToVar(column, row).not()));
+        }
     }
 
     private int[][] validValues(boolean[][] queens, BDD rules) {
@@ -59,12 +78,14 @@ public class QueensLogic32v2 implements IQueensLogic{
         int[][] qP = new int[size][size];
         for (int column = 0; column < size; column++) {
             for (int row = 0; row < size; row++) {
-                if (queenPlacement.and(withQueenAt(rules, column, row)).isOne()) {
-                    qP[column][row] = 1;
-                } else if (queenPlacement.and(withNotQueenAt(rules, column, row)).isOne()) {
-                    qP[column][row] = -1;
-                } else {
-                    qP[column][row] = 0;
+                try (var arena = new BDDArena(fact)) {
+                    if (arena.track(queenPlacement.and(arena.track(withQueenAt(rules, column, row)))).isOne()) {
+                        qP[column][row] = 1;
+                    } else if (arena.track(queenPlacement.and(arena.track(withNotQueenAt(rules, column, row)))).isOne()) {
+                        qP[column][row] = -1;
+                    } else {
+                        qP[column][row] = 0;
+                    }
                 }
             }
         }
@@ -74,47 +95,57 @@ public class QueensLogic32v2 implements IQueensLogic{
 
     // === Rules ===
 
+    // Every cell frees its temporaries when it is done (see BDDArena), and the
+    // rule is extended in place, so only the rule itself outlives a step.
+    // The results are owned by the caller.
+
     private BDD eachColumnMustHaveAtLeastOneQueen() {
-        var rul = one;
+        var rul = one.id();
         for (int column = 0; column < size; column++) {
-            var colRul = zero;
-            for (int row = 0; row < size; row++) {
-                colRul = colRul.or(posToVar(column, row));
+            try (var arena = new BDDArena(fact)) {
+                var colRul = zero;
+                for (int row = 0; row < size; row++) {
+                    colRul = arena.track(colRul.or(posToVar(column, row)));
+                }
+                rul = rul.andWith(arena.keep(colRul));
             }
-            rul = rul.and(colRul);
         }
         return rul;
     }
 
     private BDD queensMustNotCaptureHorizontally() {
-        var rul = one;
+        var rul = one.id();
         for (int row = 0; row < size; row++) {
             for (int column = 0; column < size; column++) {
-                var placedQueen = posToVar(column, row);
-                var notAllowed = zero;
-                for (int i = 0; i < size; i++) {
-                    if (i != column) {
-                        notAllowed = notAllowed.or(posToVar(i, row));
+                try (var arena = new BDDArena(fact)) {
+                    var placedQueen = posToVar(column, row);
+                    var notAllowed = zero;
+                    for (int i = 0; i < size; i++) {
+                        if (i != column) {
+                            notAllowed = arena.track(notAllowed.or(posToVar(i, row)));
+                        }
                     }
+                    rul = rul.andWith(placedQueen.imp(arena.track(notAllowed.not())));
                 }
-                rul = rul.and(placedQueen.imp(notAllowed.not()));
             }
         }
         return rul;
     }
 
     private BDD queensMustNotCaptureVertically() {
-        var rul = one;
+        var rul = one.id();
         for (int row = 0; row < size; row++) {
             for (int column = 0; column < size; column++) {
-                var placedQueen = posToVar(column, row);
-                var notAllowed = zero;
-                for (int i = 0; i < size; i++) {
-                    if (i != row) {
-                        notAllowed = notAllowed.or(posToVar(column, i));
+                try (var arena = new BDDArena(fact)) {
+                    var placedQueen = posToVar(column, row);
+                    var notAllowed = zero;
+                    for (int i = 0; i < size; i++) {
+                        if (i != row) {
+                            notAllowed = arena.track(notAllowed.or(posToVar(column, i)));
+                        }
                     }
+                    rul = rul.andWith(placedQueen.imp(arena.track(notAllowed.not())));
                 }
-                rul = rul.and(placedQueen.imp(notAllowed.not()));
             }
         }
         return rul;
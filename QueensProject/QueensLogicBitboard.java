@@ -0,0 +1,211 @@
+import java.util.Arrays;
+
+/**
+ * Interactive configurator for the n-queen problem without BDDs, for boards
+ * of up to 32x32.
+ *
+ * Rows and both diagonal families are kept as long bitmasks, and a cell is
+ * decided by searching for supporting solutions: a queen may be placed if
+ * some solution has a queen there, and must be placed if no solution lacks
+ * one. Every solution found is kept as a witness for all the cells it
+ * supports, so most cells never need a search of their own. The search picks
+ * the column with the fewest free rows first and only uses preallocated
+ * arrays, so nothing is allocated while updating the board.
+ */
+public class QueensLogicBitboard implements IPackedQueensLogic {
+    public static final int MAX_SIZE = 32;
+
+    private int size;
+    private int[][] board; // 1 = Must have queen, 0 = May have queen, -1 = Cannot have queen
+    private long full;     // Mask of all rows
+
+    private int[] queenRow;    // Row of the queen placed in each column, -1 if none
+    private int[] forcedRow;   // Row a column is restricted to during a search, -1 if none
+    private long[] excluded;   // Rows a column may not use during a search
+    private int[] witness;     // Row of each column in the solution being searched
+    private boolean[] canHaveQueen;
+    private boolean[] canBeEmpty;
+    private final PackedBoard packed = new PackedBoard();
+
+    // Search state: used rows, diagonals (column + row) and anti-diagonals
+    // (row - column + size - 1), and the columns that have a queen
+    private long rows, diagonals, antiDiagonals, columnsDone;
+
+    // === Start of IQueensLogic === //
+    public void initializeBoard(int size) {
+        if (size < 1 || size > MAX_SIZE)
+            throw new IllegalArgumentException("Board size must be between 1 and " + MAX_SIZE + ": " + size);
+
+        this.size = size;
+        this.board = new int[size][size];
+        this.full = (1L << size) - 1;
+
+        queenRow = new int[size];
+        forcedRow = new int[size];
+        excluded = new long[size];
+        witness = new int[size];
+        canHaveQueen = new boolean[size * size];
+        canBeEmpty = new boolean[size * size];
+        Arrays.fill(queenRow, -1);
+
+        updateBoard();
+        packed.reset(board);
+    }
+
+    public int[][] getBoard() {
+        return board;
+    }
+
+    public void insertQueen(int column, int row) {
+        if (board[column][row] != 0) return; // Guards against invalid moves
+
+        queenRow[column] = row;
+        updateBoard();
+        packed.update(board);
+    }
+    // === End of IQueensLogic === //
+
+    // === Start of IPackedBoard === //
+    public int getSize() {
+        return packed.getSize();
+    }
+
+    public long[] getMust() {
+        return packed.getMust();
+    }
+
+    public long[] getCannot() {
+        return packed.getCannot();
+    }
+
+    public void addCellChangeListener(ICellChangeListener listener) {
+        packed.addCellChangeListener(listener);
+    }
+
+    public void removeCellChangeListener(ICellChangeListener listener) {
+        packed.removeCellChangeListener(listener);
+    }
+    // === End of IPackedBoard === //
+
+    /**
+     * Decides every cell of the board from the placed queens.
+     */
+    private void updateBoard() {
+        Arrays.fill(canHaveQueen, false);
+        Arrays.fill(canBeEmpty, false);
+        System.arraycopy(queenRow, 0, forcedRow, 0, size);
+        Arrays.fill(excluded, 0);
+
+        if (!search()) {
+            // No solution at all; like a BDD contradiction every cell is forced
+            for (var column : board) Arrays.fill(column, 1);
+            return;
+        }
+
+        for (int column = 0; column < size; column++) {
+            for (int row = 0; row < size; row++) {
+                int cell = cell(column, row);
+
+                // Look for a solution with a queen here, unless one is known
+                if (!canHaveQueen[cell] && queenRow[column] < 0) {
+                    forcedRow[column] = row;
+                    search();
+                    forcedRow[column] = -1;
+                }
+
+                // Look for a solution without a queen here, unless one is known
+                if (!canBeEmpty[cell] && queenRow[column] != row) {
+                    excluded[column] = 1L << row;
+                    search();
+                    excluded[column] = 0;
+                }
+
+                if (canHaveQueen[cell] && canBeEmpty[cell])
+                    board[column][row] = 0;
+                else if (canHaveQueen[cell])
+                    board[column][row] = 1;
+                else
+                    board[column][row] = -1;
+            }
+        }
+    }
+
+    /**
+     * Searches for a solution respecting forcedRow and excluded, recording
+     * it as a witness if one is found.
+     */
+    private boolean search() {
+        rows = diagonals = antiDiagonals = columnsDone = 0;
+        if (!solve(0)) return false;
+
+        for (int column = 0; column < size; column++) {
+            for (int row = 0; row < size; row++) {
+                if (witness[column] == row)
+                    canHaveQueen[cell(column, row)] = true;
+                else
+                    canBeEmpty[cell(column, row)] = true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Places queens in the remaining columns, most constrained column first.
+     */
+    private boolean solve(int placed) {
+        if (placed == size) return true;
+
+        // Pick the column with the fewest free rows, failing early if one has none
+        int column = -1;
+        long options = 0;
+        int fewest = Integer.MAX_VALUE;
+        for (int c = 0; c < size; c++) {
+            if ((columnsDone & (1L << c)) != 0) continue;
+            long free = freeRows(c);
+            int count = Long.bitCount(free);
+            if (count == 0) return false;
+            if (count < fewest) {
+                fewest = count;
+                column = c;
+                options = free;
+            }
+        }
+
+        columnsDone |= 1L << column;
+        while (options != 0) {
+            long bit = options & -options;
+            options ^= bit;
+            int row = Long.numberOfTrailingZeros(bit);
+
+            long diagonal = 1L << (column + row);
+            long antiDiagonal = 1L << (row - column + size - 1);
+            rows |= bit;
+            diagonals |= diagonal;
+            antiDiagonals |= antiDiagonal;
+            witness[column] = row;
+
+            if (solve(placed + 1)) return true;
+
+            rows &= ~bit;
+            diagonals &= ~diagonal;
+            antiDiagonals &= ~antiDiagonal;
+        }
+        columnsDone &= ~(1L << column);
+        return false;
+    }
+
+    /** The rows of a column not attacked by the queens placed so far. */
+    private long freeRows(int column) {
+        long free = full & ~rows
+            & ~(diagonals >>> column)
+            & ~(antiDiagonals >>> (size - 1 - column))
+            & ~excluded[column];
+        if (forcedRow[column] >= 0)
+            free &= 1L << forcedRow[column];
+        return free;
+    }
+
+    private int cell(int column, int row) {
+        return column + row * size;
+    }
+}
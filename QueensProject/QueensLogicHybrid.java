@@ -0,0 +1,113 @@
+import net.sf.javabdd.BDDException;
+
+/**
+ * Interactive configurator for the n-queen problem that answers with the BDDs
+ * of QueensLogic32 when their rules can be compiled within a budget, and with
+ * the search of QueensLogicBitboard otherwise. Both give the same boards.
+ *
+ * The budget is a time (queens.hybrid.timeBudget, in milliseconds, 10000 by
+ * default) and a number of nodes (queens.hybrid.nodeBudget, by default what
+ * queens.heapBudget allows, see FactoryProvisioner). The factory never grows
+ * beyond the node budget, and compiling fails when it is full. The time is
+ * checked whenever a family of rules, or a quarter of the conjunctions, is
+ * compiled, so it may be overrun by one such step. When either budget is
+ * exceeded, or the factory fails in any other way (eg. while reordering or
+ * loading cached rules, or out of heap), the BDDs are dropped and the board
+ * is answered by the search. Only boards too large for the search fail.
+ *
+ * The engine that answers is written to standard error when it falls back,
+ * and published through the metrics of QueensLogic32 (queens:type=QueensLogic32,
+ * see QueensMetrics) in any case.
+ */
+public class QueensLogicHybrid implements IProgressiveQueensLogic, IPackedQueensLogic {
+    private final long timeBudgetNanos = Long.getLong("queens.hybrid.timeBudget", 10_000) * 1_000_000;
+    private final QueensLogic32 bdd;
+    private QueensLogicBitboard search;
+
+    private IQueensLogic engine; // The logic answering the moves, never null
+    private final PackedBoard packed = new PackedBoard();
+
+    public QueensLogicHybrid() {
+        var nodeBudget = Long.getLong("queens.hybrid.nodeBudget");
+        bdd = new QueensLogic32(nodeBudget == null
+            ? FactoryProvisioner.fromProperties()
+            : FactoryProvisioner.forNodes(nodeBudget));
+        engine = bdd;
+    }
+
+    // === Start of IQueensLogic === //
+    public void initializeBoard(int size) {
+        initializeBoard(size, (family, compiled, total) -> { });
+    }
+
+    public void initializeBoard(int size, ICompileProgressListener progress) {
+        long start = System.nanoTime();
+        try {
+            bdd.initializeBoard(size, (family, compiled, total) -> {
+                long elapsed = System.nanoTime() - start;
+                if (elapsed > timeBudgetNanos && compiled < total)
+                    throw new IllegalStateException(String.format(
+                        "Compiling the rules for a %dx%d board took %d ms, over the budget of %d ms",
+                        size, size, elapsed / 1_000_000, timeBudgetNanos / 1_000_000));
+                progress.familyCompiled(family, compiled, total);
+            });
+            engine = bdd;
+            bdd.getMetrics().engine("QueensLogic32", false);
+        } catch (IllegalStateException | BDDException | OutOfMemoryError e) {
+            // Over the time or node budget, or failed; the factory is in an unknown state
+            bdd.release();
+            if (size > QueensLogicBitboard.MAX_SIZE) throw e;
+
+            System.err.println("QueensLogicHybrid: " + e.getMessage() + "; answering with QueensLogicBitboard");
+            if (search == null) search = new QueensLogicBitboard();
+            search.initializeBoard(size);
+            engine = search;
+            bdd.getMetrics().engine("QueensLogicBitboard", true);
+        }
+        packed.reset(engine.getBoard());
+    }
+
+    public int[][] getBoard() {
+        return engine.getBoard();
+    }
+
+    public void insertQueen(int column, int row) {
+        if (engine == search) {
+            // QueensLogic32 records its own latencies
+            long start = System.nanoTime();
+            search.insertQueen(column, row);
+            bdd.getMetrics().insert.record(System.nanoTime() - start);
+        } else {
+            engine.insertQueen(column, row);
+        }
+        packed.update(engine.getBoard());
+    }
+    // === End of IQueensLogic === //
+
+    // === Start of IPackedBoard === //
+    public int getSize() {
+        return packed.getSize();
+    }
+
+    public long[] getMust() {
+        return packed.getMust();
+    }
+
+    public long[] getCannot() {
+        return packed.getCannot();
+    }
+
+    public void addCellChangeListener(ICellChangeListener listener) {
+        packed.addCellChangeListener(listener);
+    }
+
+    public void removeCellChangeListener(ICellChangeListener listener) {
+        packed.removeCellChangeListener(listener);
+    }
+    // === End of IPackedBoard === //
+
+    /** The logic answering the moves, QueensLogic32 or QueensLogicBitboard. */
+    public IQueensLogic getEngine() {
+        return engine;
+    }
+}
@@ -0,0 +1,255 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Interactive configurator for the n-queen problem backed by a ZDD (see ZDD),
+ * without javabdd.
+ *
+ * Instead of compiling rules over all n*n cells, the ZDD holds the family of
+ * solutions itself, each solution being the set of its n cells. The family is
+ * built column by column: the placements of the first c+1 columns are, for
+ * every row r, the placements of the first c columns without a queen
+ * attacking (c, r), with (c, r) added. Placing a queen keeps the solutions
+ * containing its cell, and the board is read off the family in one walk over
+ * its nodes.
+ *
+ * Cells are numbered column by column (column * size + row), so every column
+ * is added below the ZDD built so far.
+ */
+public class QueensLogicZDD implements IPackedQueensLogic, ISolutionSpace {
+    private int size;
+    private int[][] board; // 1 = Must have queen, 0 = May have queen, -1 = Cannot have queen
+
+    private ZDD zdd;
+    private int solutions; // The family of solutions left with the placed queens
+    private final PackedBoard packed = new PackedBoard();
+
+    // === Start of IQueensLogic === //
+    public void initializeBoard(int size) {
+        this.size = size;
+        this.board = new int[size][size];
+
+        // Build in a scratch engine and keep only the nodes of the result
+        var scratch = new ZDD(size * size, 1 << 12);
+        int all = allSolutions(scratch);
+        zdd = new ZDD(size * size, scratch.size(all) * 2);
+        solutions = zdd.copy(scratch, all);
+        updateBoard();
+        packed.reset(board);
+    }
+
+    public int[][] getBoard() {
+        return board;
+    }
+
+    public void insertQueen(int column, int row) {
+        if (board[column][row] != 0) return; // Guards against invalid moves
+
+        solutions = zdd.require(solutions, cell(column, row));
+        updateBoard();
+        packed.update(board);
+    }
+    // === End of IQueensLogic === //
+
+    // === Start of IPackedBoard === //
+    public int getSize() {
+        return packed.getSize();
+    }
+
+    public long[] getMust() {
+        return packed.getMust();
+    }
+
+    public long[] getCannot() {
+        return packed.getCannot();
+    }
+
+    public void addCellChangeListener(ICellChangeListener listener) {
+        packed.addCellChangeListener(listener);
+    }
+
+    public void removeCellChangeListener(ICellChangeListener listener) {
+        packed.removeCellChangeListener(listener);
+    }
+    // === End of IPackedBoard === //
+
+    // === Start of ISolutionSpace === //
+    public long countSolutions() {
+        return zdd.count(solutions);
+    }
+
+    /**
+     * Walks the paths of the family on demand. Families are never changed in
+     * place, so moves made while consuming the stream do not affect it.
+     */
+    public Stream<int[]> solutions() {
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(new Paths(solutions), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+    // === End of ISolutionSpace === //
+
+    /** The number of nodes created by the engine for the current board. */
+    public int getNodeNum() {
+        return zdd.nodeNum();
+    }
+
+    /**
+     * The family of all solutions in zdd, added one column at a time.
+     */
+    private int allSolutions(ZDD zdd) {
+        int placements = ZDD.BASE;
+        for (int column = 0; column < size; column++) {
+            int next = ZDD.EMPTY;
+            for (int row = 0; row < size; row++) {
+                int compatible = placements;
+                for (int previous = 0; previous < column; previous++) {
+                    int distance = column - previous;
+                    compatible = zdd.offset(compatible, cell(previous, row));
+                    if (row - distance >= 0) compatible = zdd.offset(compatible, cell(previous, row - distance));
+                    if (row + distance < size) compatible = zdd.offset(compatible, cell(previous, row + distance));
+                }
+                next = zdd.union(next, zdd.change(compatible, cell(column, row)));
+            }
+            placements = next;
+        }
+        return placements;
+    }
+
+    /**
+     * Decides every cell from the family of solutions in one walk over its
+     * nodes. A cell may have a queen if a node of the family tests it (every
+     * node lies on a path to the family of the empty set), and may be empty
+     * if a path takes its low branch or skips it.
+     */
+    private void updateBoard() {
+        if (solutions == ZDD.EMPTY) {
+            // No solution at all; like a BDD contradiction every cell is forced
+            for (var column : board) Arrays.fill(column, 1);
+            return;
+        }
+
+        int cells = size * size;
+        var canHaveQueen = new boolean[cells];
+        var canBeEmpty = new boolean[cells];
+        var skipped = new int[cells + 1]; // Difference array of the cells skipped by some edge
+
+        // Cells above the root are skipped by every path
+        skipped[0]++;
+        skipped[zdd.var(solutions)]--;
+
+        var seen = new boolean[zdd.nodeNum()];
+        var stack = new int[zdd.nodeNum()];
+        int top = 0;
+        stack[top++] = solutions;
+        seen[solutions] = true;
+        while (top > 0) {
+            int node = stack[--top];
+            if (node <= ZDD.BASE) continue;
+
+            int var = zdd.var(node);
+            canHaveQueen[var] = true;
+            int lo = zdd.lo(node), hi = zdd.hi(node);
+            if (lo != ZDD.EMPTY) {
+                canBeEmpty[var] = true;
+                skipped[var + 1]++;
+                skipped[zdd.var(lo)]--;
+            }
+            skipped[var + 1]++;
+            skipped[zdd.var(hi)]--;
+
+            if (!seen[lo]) {
+                seen[lo] = true;
+                stack[top++] = lo;
+            }
+            if (!seen[hi]) {
+                seen[hi] = true;
+                stack[top++] = hi;
+            }
+        }
+
+        int skips = 0;
+        for (int var = 0; var < cells; var++) {
+            skips += skipped[var];
+            if (skips > 0) canBeEmpty[var] = true;
+
+            int column = var / size, row = var % size;
+            if (canHaveQueen[var] && canBeEmpty[var])
+                board[column][row] = 0;
+            else if (canHaveQueen[var])
+                board[column][row] = 1;
+            else
+                board[column][row] = -1;
+        }
+    }
+
+    /**
+     * The paths of a family, depth first, as the row of the queen in each
+     * column. Only the current path is kept.
+     */
+    private class Paths implements Iterator<int[]> {
+        // Kept if the board is initialized again
+        private final ZDD zdd = QueensLogicZDD.this.zdd;
+        private final int size = QueensLogicZDD.this.size;
+        private final int[] chosen = new int[size * size]; // Nodes whose high branch the path takes
+        private int depth;
+        private boolean ready, finished;
+
+        Paths(int family) {
+            finished = family == ZDD.EMPTY;
+            if (!finished) ready = descend(family);
+        }
+
+        public boolean hasNext() {
+            while (!ready && !finished) {
+                int from = backtrack();
+                if (from == ZDD.EMPTY) finished = true;
+                else ready = descend(from);
+            }
+            return ready;
+        }
+
+        public int[] next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            ready = false;
+            var placement = new int[size];
+            for (int i = 0; i < depth; i++) {
+                int var = zdd.var(chosen[i]);
+                placement[var / size] = var % size;
+            }
+            return placement;
+        }
+
+        /** Takes high branches from node down to a terminal. */
+        private boolean descend(int node) {
+            while (node > ZDD.BASE) {
+                chosen[depth++] = node;
+                node = zdd.hi(node);
+            }
+            return node == ZDD.BASE;
+        }
+
+        /**
+         * Drops the deepest high branch of the path that has a low branch to
+         * take instead, returning that low branch (EMPTY when there is none).
+         */
+        private int backtrack() {
+            while (depth > 0) {
+                int lo = zdd.lo(chosen[--depth]);
+                if (lo != ZDD.EMPTY) return lo;
+            }
+            return ZDD.EMPTY;
+        }
+    }
+
+    /**
+     * The variable of a position on the board, numbered column by column.
+     */
+    private int cell(int column, int row) {
+        return column * size + row;
+    }
+}
@@ -0,0 +1,195 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDFactory;
+
+/**
+ * Collects the metrics of a configurator and publishes them through JMX.
+ *
+ * The logic records latencies and calls sample after every operation, on its
+ * own thread, so the factory is never touched by the JMX thread; everything
+ * JMX reads is a volatile copy. Sampling only reads counters of the factory;
+ * the node count of the compiled rules, which takes a walk over them, is
+ * taken once when they are compiled or loaded (see rules).
+ *
+ * The metrics of the most recently registered logic are published as
+ * queens:type=&lt;name&gt;, and if the system property queens.metrics.log is set
+ * to a number of seconds they are also written to standard error that often.
+ */
+public class QueensMetrics implements IQueensMetrics {
+    private static volatile QueensMetrics current;
+    private static ScheduledExecutorService logger;
+
+    final LatencyHistogram compose = new LatencyHistogram();
+    final LatencyHistogram insert = new LatencyHistogram();
+    final LatencyHistogram update = new LatencyHistogram();
+
+    private volatile int ruleNodes, liveNodes, nodeTableSize;
+    private volatile long garbageCollections;
+    private volatile long reorderings;
+    private volatile long boardCacheHits, boardCacheMisses, boardCacheRuleHits;
+    private volatile int boardCacheEntries;
+    private volatile long domainChecks, skippedDomainChecks, domainCheckNanos;
+    private volatile int lastDomainChecks;
+    private volatile double domainCheckSavedMillis;
+    private volatile String engine = "bdd";
+    private volatile long fallbacks;
+
+    /**
+     * Publishes metrics through JMX under queens:type=name, replacing the
+     * metrics of an earlier logic with the same name.
+     */
+    public static void register(String name, QueensMetrics metrics) {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var objectName = new ObjectName("queens", "type", name);
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+            server.registerMBean(new StandardMBean(metrics, IQueensMetrics.class), objectName);
+        } catch (JMException e) {
+            // Metrics must never break the logic
+            System.err.println("Could not register metrics: " + e);
+        }
+        current = metrics;
+        startLogging();
+    }
+
+    private static synchronized void startLogging() {
+        int seconds = Integer.getInteger("queens.metrics.log", 0);
+        if (seconds <= 0 || logger != null) return;
+
+        logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "queens-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        logger.scheduleAtFixedRate(() -> System.err.println("queens metrics: " + current.getSummary()),
+            seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Counts the dynamic reorderings of fact. Must be called for every
+     * factory the logic uses.
+     */
+    public void attach(BDDFactory fact) {
+        try {
+            fact.registerReorderCallback(this, getClass().getMethod("reordered", Object.class, Object.class));
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Called by the factory before (prestate 1) and after (prestate 0) a
+     * reordering.
+     */
+    public void reordered(Object prestate, Object stats) {
+        if (!Integer.valueOf(1).equals(prestate) && !Boolean.TRUE.equals(prestate))
+            reorderings++;
+    }
+
+    /**
+     * Counts the nodes of the compiled rules, once they are compiled or
+     * loaded. Must be called on the thread that uses the factory.
+     */
+    public void rules(BDD compiledRules) {
+        ruleNodes = compiledRules.nodeCount();
+    }
+
+    /**
+     * Copies the engine figures and the counters of the board cache (which
+     * may be null) after an operation. Must be called on the thread that uses
+     * the factory.
+     */
+    public void sample(BDDFactory fact, BoardCache boardCache) {
+        liveNodes = fact.getNodeNum();
+        nodeTableSize = fact.getNodeTableSize();
+        garbageCollections = fact.getGCStats().num;
+        if (boardCache != null) {
+            boardCacheHits = boardCache.hits();
+            boardCacheMisses = boardCache.misses();
+            boardCacheRuleHits = boardCache.ruleHits();
+            boardCacheEntries = boardCache.entries();
+        }
+    }
+
+    /**
+     * Records the cells a per-cell domain mode checked against the rules
+     * and the cells it did not have to check, out of all cells of the board,
+     * with the time the update took. The time saved is estimated from the
+     * mean time of a check so far.
+     */
+    public void domainChecks(int checks, int skipped, long nanos) {
+        domainChecks += checks;
+        domainCheckNanos += nanos;
+        skippedDomainChecks += skipped;
+        lastDomainChecks = checks;
+        if (domainChecks > 0)
+            domainCheckSavedMillis += skipped * (domainCheckNanos / (double) domainChecks) / 1e6;
+    }
+
+    /**
+     * Records which engine answers the moves, counting the times compiling
+     * the rules ran over budget so another engine took over.
+     */
+    public void engine(String engine, boolean fallback) {
+        this.engine = engine;
+        if (fallback) fallbacks++;
+    }
+
+    // === Start of IQueensMetrics === //
+    public long getComposeCount() { return compose.count(); }
+    public double getComposeMeanMillis() { return compose.meanMillis(); }
+    public double getComposeMaxMillis() { return compose.maxMillis(); }
+
+    public long getInsertCount() { return insert.count(); }
+    public double getInsertMeanMillis() { return insert.meanMillis(); }
+    public double getInsertP50Millis() { return insert.percentileMillis(50); }
+    public double getInsertP99Millis() { return insert.percentileMillis(99); }
+    public double getInsertMaxMillis() { return insert.maxMillis(); }
+
+    public long getUpdateCount() { return update.count(); }
+    public double getUpdateMeanMillis() { return update.meanMillis(); }
+    public double getUpdateP50Millis() { return update.percentileMillis(50); }
+    public double getUpdateP99Millis() { return update.percentileMillis(99); }
+    public double getUpdateMaxMillis() { return update.maxMillis(); }
+
+    public int getRuleNodes() { return ruleNodes; }
+    public int getLiveNodes() { return liveNodes; }
+    public int getNodeTableSize() { return nodeTableSize; }
+    public long getGarbageCollections() { return garbageCollections; }
+    public long getReorderings() { return reorderings; }
+    public long getBoardCacheHits() { return boardCacheHits; }
+    public long getBoardCacheMisses() { return boardCacheMisses; }
+    public long getBoardCacheRuleHits() { return boardCacheRuleHits; }
+    public int getBoardCacheEntries() { return boardCacheEntries; }
+    public long getDomainChecks() { return domainChecks; }
+    public int getLastDomainChecks() { return lastDomainChecks; }
+    public long getSkippedDomainChecks() { return skippedDomainChecks; }
+    public double getDomainCheckSavedMillis() { return domainCheckSavedMillis; }
+    public String getEngine() { return engine; }
+    public long getFallbacks() { return fallbacks; }
+
+    public String getSummary() {
+        return String.format("engine %s (%d fallbacks), compose [%s] insert [%s] update [%s] rules %d nodes, live %d/%d nodes, "
+                + "%d gcs, %d reorderings, boards %d hits %d misses %d entries, "
+                + "checks %d (last %d) skipped %d saving %.1f ms",
+            engine, fallbacks, compose, insert, update, ruleNodes, liveNodes, nodeTableSize,
+            garbageCollections, reorderings,
+            boardCacheHits, boardCacheMisses, boardCacheEntries,
+            domainChecks, lastDomainChecks, skippedDomainChecks, domainCheckSavedMillis);
+    }
+
+    public void resetLatencies() {
+        compose.reset();
+        insert.reset();
+        update.reset();
+    }
+    // === End of IQueensMetrics === //
+}
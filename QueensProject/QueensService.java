@@ -0,0 +1,348 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import net.sf.javabdd.BDD;
+
+/**
+ * Serves many configurator sessions over HTTP on localhost.
+ *
+ * The rules are compiled once per board size (see SharedRuleModel), and a
+ * session only keeps the rules restricted to its own queens. Sessions that
+ * have not been used for queens.service.idle seconds (300 by default) are
+ * evicted. Requests are handled on virtual threads when the JVM has them.
+ *
+ * <pre>
+ * POST   /sessions?size=8                   new session, returns its id and board
+ * GET    /sessions/{id}                     the board of a session
+ * POST   /sessions/{id}/queens?column=c&amp;row=r   insertQueen
+ * DELETE /sessions/{id}/queens?column=c&amp;row=r   removes a queen
+ * DELETE /sessions/{id}                     ends a session
+ * GET    /stats                             models and sessions
+ * </pre>
+ * Boards are returned as JSON arrays indexed [column][row], with the same
+ * values as IQueensLogic.getBoard.
+ */
+public class QueensService {
+    private final int maxSize = Integer.getInteger("queens.service.maxSize", 16);
+    private final long idleMillis = 1000L * Integer.getInteger("queens.service.idle", 300);
+
+    private final ConcurrentHashMap<Integer, CompletableFuture<SharedRuleModel>> models = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ExecutorService executor = newRequestExecutor();
+    private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+        var t = new Thread(r, "queens-evictor");
+        t.setDaemon(true);
+        return t;
+    });
+    private HttpServer server;
+
+    /** The state of one user: the rules restricted to its queens, and its board. */
+    private static class Session {
+        final String id = UUID.randomUUID().toString();
+        final SharedRuleModel model;
+        BDD rules;        // Owned by the session, null once closed
+        int[] queens = new int[0];
+        int[][] board;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        Session(SharedRuleModel model) {
+            this.model = model;
+        }
+    }
+
+    /**
+     * Valid arguments: [port]
+     * Defaults to port 8765 on the loopback address.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length >= 1 ? Integer.parseInt(args[0]) : 8765;
+        var service = new QueensService();
+        service.start(port);
+        System.out.println("Serving n-queens sessions on http://localhost:" + service.getPort() + "/");
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+
+        long period = Math.max(1000, idleMillis / 4);
+        evictor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        server.stop(0);
+        evictor.shutdownNow();
+        executor.shutdown();
+        for (var session : sessions.values()) close(session);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Virtual threads if the JVM has them (Java 21), otherwise a cached pool.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                var t = new Thread(r, "queens-request");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // === Start of request handling === //
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            var path = exchange.getRequestURI().getPath().split("/");
+            var method = exchange.getRequestMethod();
+            var query = query(exchange.getRequestURI());
+
+            if (path.length == 2 && path[1].equals("stats") && method.equals("GET")) {
+                respond(exchange, 200, stats());
+            } else if (path.length == 2 && path[1].equals("sessions") && method.equals("POST")) {
+                var session = create(intParam(query, "size"));
+                respond(exchange, 201, sessionJson(session));
+            } else if (path.length == 3 && path[1].equals("sessions")) {
+                var session = find(path[2]);
+                if (method.equals("GET")) {
+                    respond(exchange, 200, sessionJson(session));
+                } else if (method.equals("DELETE")) {
+                    sessions.remove(session.id);
+                    close(session);
+                    respond(exchange, 200, "{\"session\":\"" + session.id + "\",\"closed\":true}");
+                } else {
+                    respond(exchange, 405, error("Method not allowed: " + method));
+                }
+            } else if (path.length == 4 && path[1].equals("sessions") && path[3].equals("queens")) {
+                var session = find(path[2]);
+                int column = intParam(query, "column"), row = intParam(query, "row");
+                if (method.equals("POST")) {
+                    insertQueen(session, column, row);
+                } else if (method.equals("DELETE")) {
+                    removeQueen(session, column, row);
+                } else {
+                    respond(exchange, 405, error("Method not allowed: " + method));
+                    return;
+                }
+                respond(exchange, 200, sessionJson(session));
+            } else {
+                respond(exchange, 404, error("Not found: " + exchange.getRequestURI().getPath()));
+            }
+        } catch (NoSuchSessionException e) {
+            respond(exchange, 404, error(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            respond(exchange, 500, error(e.toString()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static class NoSuchSessionException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        NoSuchSessionException(String id) {
+            super("No such session: " + id);
+        }
+    }
+    // === End of request handling === //
+
+    // === Start of sessions === //
+    private Session create(int size) {
+        if (size < 1 || size > maxSize)
+            throw new IllegalArgumentException("Board size must be between 1 and " + maxSize + ": " + size);
+
+        var session = new Session(model(size));
+        session.model.withLock(() -> {
+            session.rules = session.model.restrict(session.queens);
+            session.board = session.model.boardOf(session.rules);
+            return null;
+        });
+        sessions.put(session.id, session);
+        return session;
+    }
+
+    private Session find(String id) {
+        var session = sessions.get(id);
+        if (session == null) throw new NoSuchSessionException(id);
+        session.lastUsed = System.currentTimeMillis();
+        return session;
+    }
+
+    private void insertQueen(Session session, int column, int row) {
+        var model = session.model;
+        checkCell(model, column, row);
+        model.withLock(() -> {
+            if (session.rules == null) throw new NoSuchSessionException(session.id);
+            if (session.board[column][row] != 0) return null; // Guards against invalid moves
+
+            int var = model.varOf(column, row);
+            var next = model.withQueen(session.rules, var);
+            session.rules.free();
+            session.rules = next;
+            session.queens = Arrays.copyOf(session.queens, session.queens.length + 1);
+            session.queens[session.queens.length - 1] = var;
+            session.board = model.boardOf(next);
+            return null;
+        });
+    }
+
+    private void removeQueen(Session session, int column, int row) {
+        var model = session.model;
+        checkCell(model, column, row);
+        model.withLock(() -> {
+            if (session.rules == null) throw new NoSuchSessionException(session.id);
+            int var = model.varOf(column, row);
+            var remaining = Arrays.stream(session.queens).filter(q -> q != var).toArray();
+            if (remaining.length == session.queens.length) return null; // No queen was placed here
+
+            // Start over from the shared rules rather than recompiling them
+            session.rules.free();
+            session.rules = model.restrict(remaining);
+            session.queens = remaining;
+            session.board = model.boardOf(session.rules);
+            return null;
+        });
+    }
+
+    private static void close(Session session) {
+        session.model.withLock(() -> {
+            if (session.rules != null) {
+                session.rules.free();
+                session.rules = null;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Ends the sessions that have not been used for a while, freeing their
+     * rules.
+     */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (var session : sessions.values()) {
+            if (now - session.lastUsed > idleMillis && sessions.remove(session.id, session))
+                close(session);
+        }
+    }
+
+    /**
+     * The shared model for a board size, compiling it on first use. Requests
+     * for a size that is being compiled wait for the same compilation.
+     */
+    private SharedRuleModel model(int size) {
+        var future = models.computeIfAbsent(size,
+            s -> CompletableFuture.supplyAsync(() -> new SharedRuleModel(s), executor));
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            models.remove(size, future); // Let a later request try again
+            throw e;
+        }
+    }
+
+    private static void checkCell(SharedRuleModel model, int column, int row) {
+        if (column < 0 || column >= model.getSize() || row < 0 || row >= model.getSize())
+            throw new IllegalArgumentException("Outside the board: " + column + "," + row);
+    }
+    // === End of sessions === //
+
+    // === Start of JSON === //
+    private static String sessionJson(Session session) {
+        var board = session.model.withLock(() -> {
+            if (session.rules == null) throw new NoSuchSessionException(session.id);
+            return session.board;
+        });
+
+        var json = new StringBuilder();
+        json.append("{\"session\":\"").append(session.id).append("\",\"size\":").append(session.model.getSize());
+        json.append(",\"board\":[");
+        for (int column = 0; column < board.length; column++) {
+            if (column > 0) json.append(',');
+            json.append('[');
+            for (int row = 0; row < board[column].length; row++) {
+                if (row > 0) json.append(',');
+                json.append(board[column][row]);
+            }
+            json.append(']');
+        }
+        return json.append("]}").toString();
+    }
+
+    private String stats() {
+        var json = new StringBuilder("{\"sessions\":").append(sessions.size()).append(",\"models\":[");
+        boolean first = true;
+        for (var entry : models.entrySet()) {
+            if (!entry.getValue().isDone() || entry.getValue().isCompletedExceptionally()) continue;
+            var model = entry.getValue().join();
+            long users = sessions.values().stream().filter(s -> s.model == model).count();
+            int nodes = model.withLock(model::nodesInUse);
+
+            if (!first) json.append(',');
+            first = false;
+            json.append("{\"size\":").append(entry.getKey())
+                .append(",\"sessions\":").append(users)
+                .append(",\"nodes\":").append(nodes).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String error(String message) {
+        return "{\"error\":\"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+    // === End of JSON === //
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        var body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static Map<String, String> query(URI uri) {
+        var params = new HashMap<String, String>();
+        if (uri.getQuery() == null) return params;
+        for (var pair : uri.getQuery().split("&")) {
+            var parts = pair.split("=", 2);
+            params.put(parts[0], parts.length == 2 ? parts[1] : "");
+        }
+        return params;
+    }
+
+    private static int intParam(Map<String, String> query, String name) {
+        var value = query.get(name);
+        if (value == null) throw new IllegalArgumentException("Missing parameter: " + name);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + name + "=" + value);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDFactory;
+
+/**
+ * On-disk cache of compiled rule BDDs, one file per board size and variable
+ * ordering.
+ *
+ * Each file starts with a small text header followed by the BDD as written by
+ * BDDFactory.save:
+ * <pre>
+ * queens-rules-cache &lt;format version&gt;
+ * size &lt;board size&gt;
+ * ordering &lt;ordering key&gt;
+ * rules &lt;RuleCompiler.RULES_VERSION&gt;
+ * order &lt;variable at level 0&gt; &lt;variable at level 1&gt; ...
+ * crc &lt;CRC32 of the BDD part, 8 hex digits&gt;
+ * </pre>
+ * The BDD is streamed out while its checksum is computed. Loading reads the
+ * BDD part into memory and checks it before the factory is touched, and an
+ * entry whose header does not match or whose checksum fails is deleted and
+ * treated as a miss.
+ */
+public class RuleCache {
+    public static final int FORMAT_VERSION = 2;
+    private static final String MAGIC = "queens-rules-cache";
+
+    private final File dir;
+
+    public RuleCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * The cache configured by the system properties queens.cache (set to
+     * false to disable caching) and queens.cache.dir (defaults to bddcache),
+     * or null if caching is disabled.
+     */
+    public static RuleCache fromProperties() {
+        if (!Boolean.parseBoolean(System.getProperty("queens.cache", "true")))
+            return null;
+        return new RuleCache(new File(System.getProperty("queens.cache.dir", "bddcache")));
+    }
+
+    /**
+     * Loads the rules for the given board size and ordering key into fact, or
+     * returns null if there is no valid entry. The factory gets the stored
+     * variable order, which may differ from the initial one if the rules were
+     * dynamically reordered while compiling. A valid entry is kept when the
+     * factory runs out of nodes loading it, and its BDDException is thrown,
+     * since compiling the rules would fail the same way.
+     */
+    public BDD load(BDDFactory fact, int size, String ordering) {
+        var file = fileFor(size, ordering);
+        if (!file.isFile()) return null;
+
+        try (var in = new BufferedInputStream(new FileInputStream(file))) {
+            if (!(MAGIC + " " + FORMAT_VERSION).equals(readLine(in))
+                    || !("size " + size).equals(readLine(in))
+                    || !("ordering " + ordering).equals(readLine(in))
+                    || !("rules " + RuleCompiler.RULES_VERSION).equals(readLine(in))) {
+                return discard(file, "stale header");
+            }
+
+            var order = parseOrder(readLine(in), fact.varNum());
+            var crcLine = readLine(in);
+            if (order == null || crcLine == null || !crcLine.startsWith("crc "))
+                return discard(file, "malformed header");
+            long expectedCrc = Long.parseLong(crcLine.substring(4), 16);
+
+            // The whole body is checked before anything is applied to the factory
+            var body = in.readAllBytes();
+            var crc = new CRC32();
+            crc.update(body);
+            if (crc.getValue() != expectedCrc)
+                return discard(file, "checksum mismatch");
+
+            if (!sameOrder(fact, order))
+                fact.setVarOrder(order);
+            var rules = fact.load(new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.US_ASCII)));
+            return rules;
+        } catch (IOException | NumberFormatException e) {
+            return discard(file, e.toString());
+        }
+    }
+
+    /**
+     * Stores the rules for the given board size and ordering key together
+     * with the current variable order of fact. Failures are reported but not
+     * fatal, as the rules can always be compiled again.
+     */
+    public void store(BDDFactory fact, int size, String ordering, BDD rules) {
+        try {
+            Files.createDirectories(dir.toPath());
+            var tmp = File.createTempFile("rules-" + size + "-", ".tmp", dir);
+            try {
+                long crcOffset;
+                CRC32 crc = new CRC32();
+                try (var out = new FileOutputStream(tmp)) {
+                    var header = new StringBuilder();
+                    header.append(MAGIC).append(' ').append(FORMAT_VERSION).append('\n');
+                    header.append("size ").append(size).append('\n');
+                    header.append("ordering ").append(ordering).append('\n');
+                    header.append("rules ").append(RuleCompiler.RULES_VERSION).append('\n');
+                    header.append("order");
+                    for (int level = 0; level < fact.varNum(); level++) {
+                        header.append(' ').append(fact.level2Var(level));
+                    }
+                    header.append('\n');
+                    header.append("crc ");
+                    crcOffset = header.length();
+                    header.append("00000000\n");
+                    out.write(header.toString().getBytes(StandardCharsets.US_ASCII));
+
+                    var writer = new BufferedWriter(new OutputStreamWriter(
+                        new CheckedOutputStream(out, crc), StandardCharsets.US_ASCII));
+                    fact.save(writer, rules);
+                    writer.flush();
+                }
+                // Patch the placeholder now that the checksum is known
+                try (var raf = new RandomAccessFile(tmp, "rw")) {
+                    raf.seek(crcOffset);
+                    raf.write(String.format("%08x", crc.getValue()).getBytes(StandardCharsets.US_ASCII));
+                }
+                Files.move(tmp.toPath(), fileFor(size, ordering).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not cache rules for size " + size + ": " + e);
+        }
+    }
+
+    /**
+     * Removes the entries for the given board size, whatever their ordering.
+     * Returns true if there was one.
+     */
+    public boolean invalidate(int size) {
+        var files = dir.listFiles((d, name) -> name.startsWith("rules-" + size + "-") && name.endsWith(".bdd"));
+        if (files == null) return false;
+        boolean removed = false;
+        for (var file : files) {
+            removed |= file.delete();
+        }
+        return removed;
+    }
+
+    /**
+     * Removes every entry in the cache.
+     */
+    public void clear() {
+        var files = dir.listFiles((d, name) -> name.startsWith("rules-") && name.endsWith(".bdd"));
+        if (files == null) return;
+        for (var file : files) {
+            file.delete();
+        }
+    }
+
+    private File fileFor(int size, String ordering) {
+        return new File(dir, "rules-" + size + "-" + ordering + ".bdd");
+    }
+
+    private BDD discard(File file, String reason) {
+        System.err.println("Discarding cached rules " + file + ": " + reason);
+        file.delete();
+        return null;
+    }
+
+    /** Parses an order line, returning null if it is not a permutation of the variables. */
+    private static int[] parseOrder(String line, int varNum) {
+        if (line == null || !line.startsWith("order")) return null;
+        var parts = line.substring(5).trim().split(" ");
+        if (parts.length != varNum) return null;
+        var order = new int[varNum];
+        var seen = new boolean[varNum];
+        for (int level = 0; level < varNum; level++) {
+            int var = Integer.parseInt(parts[level]);
+            if (var < 0 || var >= varNum || seen[var]) return null;
+            seen[var] = true;
+            order[level] = var;
+        }
+        return order;
+    }
+
+    private static boolean sameOrder(BDDFactory fact, int[] order) {
+        for (int level = 0; level < order.length; level++) {
+            if (fact.level2Var(level) != order[level]) return false;
+        }
+        return true;
+    }
+
+    /** Reads a header line byte by byte so nothing of the body is consumed. */
+    private static String readLine(InputStream in) throws IOException {
+        var line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c == -1) return null;
+            line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Valid arguments: [size ...]
+     * Invalidates the entries for the given board sizes, or all entries if
+     * no size is given.
+     */
+    public static void main(String[] args) {
+        var cache = new RuleCache(new File(System.getProperty("queens.cache.dir", "bddcache")));
+        if (args.length == 0) {
+            cache.clear();
+            return;
+        }
+        for (var arg : args) {
+            int size = Integer.parseInt(arg);
+            System.out.println("size " + size + (cache.invalidate(size) ? ": removed" : ": not cached"));
+        }
+    }
+}
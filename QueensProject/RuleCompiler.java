@@ -0,0 +1,397 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDFactory;
+import net.sf.javabdd.JFactory;
+
+/**
+ * Compiles the rules of the n-queen problem into a BDD.
+ *
+ * Instead of one implication per cell, every line of the board (row, column
+ * or diagonal) gets a single cardinality constraint. Each constraint is built
+ * bottom-up as a sequential counter over the variables of the line, sorted by
+ * level, so every step is an ite on a variable above both branches and the
+ * intermediate BDDs never grow beyond the final one.
+ *
+ * The constraints are conjoined in the order planned by a
+ * ConjunctionScheduler. With the default left-deep schedule the lines of
+ * every family are split into a few shards of neighbouring lines, and each
+ * shard is conjoined on its own into the rules so far, family by family. A
+ * whole family is far larger than what it adds to the rules so far (the
+ * diagonals of a 9x9 board alone take 1.7 million nodes), while its shards
+ * stay small, so this keeps the peak near the size of the rules; four
+ * shards measured best, more only add conjunctions. Any other schedule
+ * conjoins all constraints of all families at once.
+ *
+ * The intermediate BDDs of every constraint are freed as soon as it is built
+ * (see BDDArena), and the peak number of nodes in use while compiling is
+ * kept for comparison.
+ *
+ * With the system property queens.ruleTemplates=true every constraint shape
+ * (at least one, at most one) is built only once per line length, on the
+ * variables 0 .. length-1 of a scratch factory, and kept serialized for the
+ * rest of the process, so every board size shares them. A line then gets its
+ * constraint by loading the template once per factory and renaming its
+ * variables to those of the line (BDD.replace). Both shapes are symmetric in
+ * their variables, so any renaming is correct; the variables are paired up
+ * in level order, so the renaming never has to reorder nodes.
+ */
+public class RuleCompiler {
+    /**
+     * Version of the compiled rule set. Bump this whenever a change makes
+     * compile() produce a different BDD, so cached rules get invalidated.
+     */
+    public static final int RULES_VERSION = 1;
+
+    /** The names of the families of rules, in the order they are conjoined. */
+    public static final List<String> FAMILIES = List.of("columns", "horizontal", "vertical", "diagonal");
+
+    /** Shards every family is split into by the left-deep schedule. */
+    static final int SHARDS = 4;
+
+    private enum Shape { AT_LEAST_ONE, AT_MOST_ONE }
+
+    // Templates saved from their scratch factories, by shape and line length
+    private static final Map<String, String> savedTemplates = new ConcurrentHashMap<>();
+
+    private final BDDFactory fact;
+    private final int size;
+    private final ConjunctionScheduler scheduler;
+    private int peakNodes;
+
+    private final boolean useTemplates = Boolean.getBoolean("queens.ruleTemplates");
+    private final Map<String, BDD> templates = new HashMap<>(); // Loaded into fact
+
+    /**
+     * A compiler using the schedule configured by the system properties, see
+     * ConjunctionScheduler.fromProperties.
+     */
+    public RuleCompiler(BDDFactory fact, int size) {
+        this(fact, size, ConjunctionScheduler.fromProperties());
+    }
+
+    public RuleCompiler(BDDFactory fact, int size, ConjunctionScheduler scheduler) {
+        this.fact = fact;
+        this.size = size;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Composes all rules into a single BDD.
+     */
+    public BDD compile() {
+        return compile((family, compiled, total) -> { });
+    }
+
+    /**
+     * Composes all rules into a single BDD, reporting each rule family to
+     * progress once it is compiled. When all constraints are conjoined at
+     * once, every quarter of the conjunctions is reported as the family
+     * "conjunction" instead.
+     */
+    public BDD compile(ICompileProgressListener progress) {
+        if (scheduler.getStrategy() != ConjunctionScheduler.Strategy.LEFT_DEEP) {
+            var constraints = new ArrayList<BDD>();
+            columns().forEach(line -> constraints.add(constraint(Shape.AT_LEAST_ONE, line)));
+            rows().forEach(line -> constraints.add(constraint(Shape.AT_MOST_ONE, line)));
+            columns().forEach(line -> constraints.add(constraint(Shape.AT_MOST_ONE, line)));
+            diagonals().forEach(line -> constraints.add(constraint(Shape.AT_MOST_ONE, line)));
+            freeTemplates();
+
+            int steps = constraints.size() - 1;
+            return scheduler.conjoin(fact, constraints, done -> {
+                peakNodes = Math.max(peakNodes, fact.getNodeNum());
+                // Only report every quarter, the steps can be many and quick
+                if (done * 4 / steps != (done - 1) * 4 / steps)
+                    progress.familyCompiled("conjunction", done * 4 / steps, 4);
+            });
+        }
+
+        // Each shard is consumed by the conjunction
+        var rul = fact.one();
+        for (int family = 0; family < FAMILIES.size(); family++) {
+            var name = FAMILIES.get(family);
+            for (var shard : shards(name)) {
+                rul = rul.andWith(family(name, shard));
+            }
+            familyCompiled(progress, name, family + 1);
+        }
+
+        freeTemplates();
+        return rul;
+    }
+
+    private void familyCompiled(ICompileProgressListener progress, String family, int compiled) {
+        peakNodes = Math.max(peakNodes, fact.getNodeNum());
+        progress.familyCompiled(family, compiled, 4);
+    }
+
+    /**
+     * The largest number of nodes in use in the factory seen while
+     * compiling, sampled while building every constraint and after every
+     * family.
+     */
+    public int getPeakNodes() {
+        return peakNodes;
+    }
+
+    // === Start of Rules === //
+
+    /**
+     * A BDD representing the rule that each column must have at least one queen.
+     */
+    public BDD eachColumnMustHaveAtLeastOneQueen() {
+        return family("columns", columns());
+    }
+
+    /**
+     * A BDD representing the rule that queens must not be able to capture any other
+     * queen horizontally, ie. each row has at most one queen.
+     */
+    public BDD queensMustNotCaptureHorizontally() {
+        return family("horizontal", rows());
+    }
+
+    /**
+     * A BDD representing the rule that queens must not be able to capture any other
+     * queen vertically, ie. each column has at most one queen.
+     */
+    public BDD queensMustNotCaptureVertically() {
+        return family("vertical", columns());
+    }
+
+    /**
+     * A BDD representing the rule that queens must not be able to capture any other
+     * queen diagonally, ie. each diagonal and anti-diagonal has at most one queen.
+     */
+    public BDD queensMustNotCaptureDiagonally() {
+        return family("diagonal", diagonals());
+    }
+
+    /** The lines constrained by a family of rules (see FAMILIES). */
+    List<int[]> lines(String family) {
+        switch (family) {
+            case "columns":
+            case "vertical":
+                return columns();
+            case "horizontal":
+                return rows();
+            case "diagonal":
+                return diagonals();
+            default:
+                throw new IllegalArgumentException("Unknown rule family: " + family);
+        }
+    }
+
+    /**
+     * The lines of a family of rules split into SHARDS runs of neighbouring
+     * lines (fewer if the family has fewer lines).
+     */
+    List<List<int[]>> shards(String family) {
+        var lines = lines(family);
+        var shards = new ArrayList<List<int[]>>();
+        int count = Math.min(SHARDS, lines.size());
+        for (int shard = 0; shard < count; shard++) {
+            shards.add(lines.subList(shard * lines.size() / count, (shard + 1) * lines.size() / count));
+        }
+        return shards;
+    }
+
+    /**
+     * The conjunction of the constraints of a family of rules on some of its
+     * lines, eg. one of its shards (see shards).
+     */
+    BDD family(String family, List<int[]> lines) {
+        var shape = family.equals("columns") ? Shape.AT_LEAST_ONE : Shape.AT_MOST_ONE;
+        var constraints = new ArrayList<BDD>();
+        for (var line : lines) {
+            constraints.add(constraint(shape, line));
+        }
+        return scheduler.conjoin(fact, constraints);
+    }
+
+    // === End of Rules === //
+
+    // === Start of Lines === //
+
+    /** The variables of each row of the board. */
+    public List<int[]> rows() {
+        var lines = new ArrayList<int[]>();
+        for (int row = 0; row < size; row++) {
+            var line = new int[size];
+            for (int column = 0; column < size; column++) {
+                line[column] = posToVarId(column, row);
+            }
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    /** The variables of each column of the board. */
+    public List<int[]> columns() {
+        var lines = new ArrayList<int[]>();
+        for (int column = 0; column < size; column++) {
+            var line = new int[size];
+            for (int row = 0; row < size; row++) {
+                line[row] = posToVarId(column, row);
+            }
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    /**
+     * The variables of each diagonal (top-left to bottom-right) and each
+     * anti-diagonal (top-right to bottom-left) with at least two cells.
+     */
+    public List<int[]> diagonals() {
+        var lines = new ArrayList<int[]>();
+        // column - row is constant along a diagonal
+        for (int d = -(size - 2); d <= size - 2; d++) {
+            var line = new int[size - Math.abs(d)];
+            for (int i = 0; i < line.length; i++) {
+                int column = Math.max(d, 0) + i;
+                line[i] = posToVarId(column, column - d);
+            }
+            lines.add(line);
+        }
+        // column + row is constant along an anti-diagonal
+        for (int s = 1; s <= 2 * size - 3; s++) {
+            var line = new int[size - Math.abs(s - (size - 1))];
+            for (int i = 0; i < line.length; i++) {
+                int column = Math.max(s - (size - 1), 0) + i;
+                line[i] = posToVarId(column, s - column);
+            }
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    // === End of Lines === //
+
+    // === Start of Cardinality constraints === //
+
+    /**
+     * A BDD that is true when at least one of the variables is true.
+     */
+    public BDD atLeastOne(int[] vars) {
+        try (var arena = new BDDArena(fact)) {
+            var one = arena.track(fact.one());
+            var rul = arena.track(fact.zero());
+            for (int var : bottomUp(vars)) {
+                rul = arena.track(arena.track(fact.ithVar(var)).ite(one, rul));
+            }
+            return kept(arena, rul);
+        }
+    }
+
+    /**
+     * A BDD that is true when at most one of the variables is true.
+     * This is a sequential counter with the states "none so far" and
+     * "at most one so far", built from the bottom of the BDD upwards.
+     */
+    public BDD atMostOne(int[] vars) {
+        try (var arena = new BDDArena(fact)) {
+            var zero = arena.track(fact.zero());
+            var none = arena.track(fact.one());
+            var atMost = arena.track(fact.one());
+            for (int var : bottomUp(vars)) {
+                var x = arena.track(fact.ithVar(var));
+                atMost = arena.track(x.ite(none, atMost));
+                none = arena.track(x.ite(zero, none));
+            }
+            return kept(arena, atMost);
+        }
+    }
+
+    /** Takes result out of the arena, recording the peak of the arena. */
+    private BDD kept(BDDArena arena, BDD result) {
+        peakNodes = Math.max(peakNodes, arena.peakNodes());
+        return arena.keep(result);
+    }
+
+    /**
+     * The constraint of the given shape on a line, built directly or
+     * instantiated from a template.
+     */
+    private BDD constraint(Shape shape, int[] line) {
+        if (!useTemplates)
+            return shape == Shape.AT_LEAST_ONE ? atLeastOne(line) : atMostOne(line);
+
+        var template = templates.computeIfAbsent(shape + "/" + line.length,
+            key -> load(savedTemplates.computeIfAbsent(key, k -> buildTemplate(shape, line.length))));
+        var pairing = fact.makePair();
+        pairing.set(bottomUp(IntStream.range(0, line.length).toArray()), bottomUp(line));
+        return template.replace(pairing);
+    }
+
+    /**
+     * Builds the constraint of the given shape on the variables 0 .. length-1
+     * of a scratch factory with only those variables, and saves it.
+     */
+    private static String buildTemplate(Shape shape, int length) {
+        var scratch = JFactory.init(1_000 + 4 * length, 1_000);
+        try {
+            scratch.setVarNum(length);
+            var compiler = new RuleCompiler(scratch, length, new ConjunctionScheduler(ConjunctionScheduler.Strategy.LEFT_DEEP, false));
+            var vars = IntStream.range(0, length).toArray();
+            var template = shape == Shape.AT_LEAST_ONE ? compiler.atLeastOne(vars) : compiler.atMostOne(vars);
+
+            var saved = new StringWriter();
+            try (var out = new BufferedWriter(saved)) {
+                scratch.save(out, template);
+            }
+            return saved.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Writing to a string never fails
+        } finally {
+            scratch.done();
+        }
+    }
+
+    private BDD load(String template) {
+        try {
+            return fact.load(new BufferedReader(new StringReader(template)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Reading from a string never fails
+        }
+    }
+
+    /** Frees the templates loaded into the factory. */
+    private void freeTemplates() {
+        templates.values().forEach(BDD::free);
+        templates.clear();
+    }
+
+    /** The variables sorted from the deepest level to the top level. */
+    private int[] bottomUp(int[] vars) {
+        return Arrays.stream(vars)
+            .boxed()
+            .sorted(Comparator.comparingInt(fact::var2Level).reversed())
+            .mapToInt(Integer::intValue)
+            .toArray();
+    }
+
+    // === End of Cardinality constraints === //
+
+    /**
+     * The variable of a position on the board, using the same row-major
+     * numbering as QueensLogic32.
+     */
+    private int posToVarId(int column, int row) {
+        return column + row * size;
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDException;
+import net.sf.javabdd.BDDFactory;
+
+/**
+ * The compiled rules for one board size, shared by every session of that
+ * size.
+ *
+ * The compiled rules are never changed after construction; a session only
+ * keeps the rules restricted to its own queens, in the same factory. JFactory
+ * is not thread-safe, so all BDD operations on a model (including freeing)
+ * must hold its lock, see withLock.
+ */
+public class SharedRuleModel {
+    private final int size;
+    private final BDDFactory fact;
+    private final BDD compiledRules;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public SharedRuleModel(int size) {
+        this.size = size;
+        var provisioner = FactoryProvisioner.fromProperties();
+        this.fact = provisioner.provision(size);
+
+        var ordering = VariableOrdering.fromProperties();
+        fact.setVarNum(size * size);
+        fact.setVarOrder(ordering.order(size));
+
+        // Only compile the rules if they are not already cached
+        var cache = RuleCache.fromProperties();
+        var key = ordering.name().toLowerCase();
+        var rules = cache == null ? null : cache.load(fact, size, key);
+        if (rules == null) {
+            var progress = provisioner.monitor(fact, size, (family, compiled, total) -> { });
+            try {
+                rules = new RuleCompiler(fact, size).compile(progress);
+            } catch (BDDException e) {
+                throw provisioner.exceeded(size, e);
+            }
+            if (cache != null) cache.store(fact, size, key, rules);
+        }
+        this.compiledRules = rules;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Runs action while holding the lock of the model, so it may use the
+     * factory and any BDD of the model.
+     */
+    public <T> T withLock(Supplier<T> action) {
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The compiled rules restricted to a queen on each of the given
+     * variables, as a new BDD owned by the caller. The lock must be held.
+     */
+    public BDD restrict(int[] queens) {
+        var rules = compiledRules.id();
+        for (int var : queens) {
+            rules = rules.andWith(fact.ithVar(var));
+        }
+        return rules;
+    }
+
+    /**
+     * Rules with one more queen on var, as a new BDD owned by the caller. The
+     * lock must be held.
+     */
+    public BDD withQueen(BDD rules, int var) {
+        return rules.id().andWith(fact.ithVar(var));
+    }
+
+    /**
+     * The board (indexed [column][row]) described by rules. The lock must be
+     * held.
+     */
+    public int[][] boardOf(BDD rules) {
+        var domains = DomainExtractor.extract(rules);
+        var board = new int[size][size];
+        for (int column = 0; column < size; column++) {
+            for (int row = 0; row < size; row++) {
+                board[column][row] = domains[varOf(column, row)];
+            }
+        }
+        return board;
+    }
+
+    /** The number of nodes in use in the factory. The lock must be held. */
+    public int nodesInUse() {
+        return fact.getNodeNum();
+    }
+
+    public int varOf(int column, int row) {
+        return column + row * size;
+    }
+}
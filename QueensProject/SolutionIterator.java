@@ -0,0 +1,106 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDFactory;
+
+/**
+ * Lazily enumerates the satisfying assignments of a BDD, one level at a time.
+ *
+ * Only the current path is kept (one node and one branch per level), so
+ * memory stays the same however many assignments there are, unlike
+ * BDD.allsat. Variables skipped by the path take both values. Each
+ * assignment is indexed by variable id.
+ *
+ * Like the factory itself, the iterator must only be used from one thread.
+ */
+public class SolutionIterator implements Iterator<boolean[]> {
+    private final BDDFactory fact;
+    private final int varNum;
+    private final BDD[] nodes;     // Node reached at each level of the path
+    private final boolean[] owned; // Whether the node at a level must be freed by us
+    private final int[] branch;    // Next value to try at each level, 2 when both are done
+    private final boolean[] values;
+    private int depth;
+    private boolean ready, finished;
+
+    public SolutionIterator(BDD rul) {
+        this.fact = rul.getFactory();
+        this.varNum = fact.varNum();
+        this.nodes = new BDD[varNum + 1];
+        this.owned = new boolean[varNum + 1];
+        this.branch = new int[varNum + 1];
+        this.values = new boolean[varNum];
+
+        nodes[0] = rul.id();
+        owned[0] = true;
+        finished = rul.isZero();
+        if (finished) cancel();
+    }
+
+    public boolean hasNext() {
+        if (!ready && !finished) {
+            ready = advance();
+            if (!ready) cancel();
+        }
+        return ready;
+    }
+
+    public boolean[] next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        ready = false;
+        return values.clone();
+    }
+
+    /**
+     * Stops the enumeration and releases the nodes held by the iterator.
+     */
+    public void cancel() {
+        finished = true;
+        ready = false;
+        for (int level = 0; level <= varNum; level++) {
+            if (owned[level]) nodes[level].free();
+            owned[level] = false;
+            nodes[level] = null;
+        }
+    }
+
+    /** Moves to the next complete path, returning false if there is none. */
+    private boolean advance() {
+        while (depth >= 0) {
+            if (depth == varNum) {
+                // Backtrack first, so the next call continues from here
+                depth--;
+                return true;
+            }
+
+            int value = branch[depth];
+            if (value > 1) {
+                depth--;
+                continue;
+            }
+            branch[depth] = value + 1;
+
+            var node = nodes[depth];
+            BDD child;
+            boolean skipped = node.isOne() || node.level() > depth;
+            if (skipped)
+                child = node; // The variable at this level is free
+            else
+                child = value == 0 ? node.low() : node.high();
+
+            if (child.isZero()) {
+                child.free();
+                continue;
+            }
+
+            values[fact.level2Var(depth)] = value == 1;
+            depth++;
+            if (owned[depth]) nodes[depth].free();
+            nodes[depth] = child;
+            owned[depth] = !skipped;
+            branch[depth] = 0;
+        }
+        return false;
+    }
+}
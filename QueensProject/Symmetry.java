@@ -0,0 +1,99 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The eight rotations and reflections of a square board.
+ *
+ * The rules of the n-queen problem are invariant under all of them, so a
+ * placement of queens and every placement it maps to have the same board up
+ * to the same transformation. Cells are numbered column + row * size, like
+ * the BDD variables.
+ */
+public enum Symmetry {
+    IDENTITY {
+        int column(int c, int r, int n) { return c; }
+        int row(int c, int r, int n) { return r; }
+    },
+    ROTATE_90 {
+        int column(int c, int r, int n) { return n - 1 - r; }
+        int row(int c, int r, int n) { return c; }
+    },
+    ROTATE_180 {
+        int column(int c, int r, int n) { return n - 1 - c; }
+        int row(int c, int r, int n) { return n - 1 - r; }
+    },
+    ROTATE_270 {
+        int column(int c, int r, int n) { return r; }
+        int row(int c, int r, int n) { return n - 1 - c; }
+    },
+    MIRROR_COLUMNS {
+        int column(int c, int r, int n) { return n - 1 - c; }
+        int row(int c, int r, int n) { return r; }
+    },
+    MIRROR_ROWS {
+        int column(int c, int r, int n) { return c; }
+        int row(int c, int r, int n) { return n - 1 - r; }
+    },
+    TRANSPOSE {
+        int column(int c, int r, int n) { return r; }
+        int row(int c, int r, int n) { return c; }
+    },
+    ANTI_TRANSPOSE {
+        int column(int c, int r, int n) { return n - 1 - r; }
+        int row(int c, int r, int n) { return n - 1 - c; }
+    };
+
+    abstract int column(int c, int r, int n);
+    abstract int row(int c, int r, int n);
+
+    /** The cell that the given cell is moved to on a board of size n. */
+    public int cell(int cell, int n) {
+        int c = cell % n, r = cell / n;
+        return column(c, r, n) + row(c, r, n) * n;
+    }
+
+    /**
+     * The transformations that map the queens onto themselves.
+     */
+    public static List<Symmetry> stabilizer(QueenSet queens) {
+        var group = new ArrayList<Symmetry>();
+        for (var symmetry : values()) {
+            if (queens.transform(symmetry).equals(queens)) group.add(symmetry);
+        }
+        return group;
+    }
+
+    /**
+     * The representative of every cell among the cells the group maps it to
+     * (the lowest numbered one). Cells with the same representative have the
+     * same domain when the group keeps the queens in place.
+     */
+    public static int[] representatives(List<Symmetry> group, int n) {
+        var representative = new int[n * n];
+        for (int cell = 0; cell < representative.length; cell++) {
+            int lowest = cell;
+            for (var symmetry : group) {
+                lowest = Math.min(lowest, symmetry.cell(cell, n));
+            }
+            representative[cell] = lowest;
+        }
+        return representative;
+    }
+
+    /**
+     * The transformation mapping the queens to their canonical form, the
+     * lowest of their eight images (see QueenSet.compareTo).
+     */
+    public static Symmetry canonicalizing(QueenSet queens) {
+        var best = IDENTITY;
+        var lowest = queens;
+        for (var symmetry : values()) {
+            var image = queens.transform(symmetry);
+            if (image.compareTo(lowest) < 0) {
+                lowest = image;
+                best = symmetry;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,154 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import net.sf.javabdd.BDDFactory;
+
+/**
+ * The built-in variable orderings. The examples show the level of each
+ * position on a 4x4 board.
+ */
+public enum VariableOrdering implements IVariableOrdering {
+    /**
+     * <pre>
+     *00 01 02 03
+     *04 05 06 07
+     *08 09 10 11
+     *12 13 14 15
+     * </pre>
+     */
+    ROW_MAJOR {
+        public int[] order(int size) {
+            return ofCells(size, cells(size, (column, row) -> row * size + column));
+        }
+    },
+    /**
+     * <pre>
+     *00 04 08 12
+     *01 05 09 13
+     *02 06 10 14
+     *03 07 11 15
+     * </pre>
+     */
+    COLUMN_MAJOR {
+        public int[] order(int size) {
+            return ofCells(size, cells(size, (column, row) -> column * size + row));
+        }
+    },
+    /**
+     * <pre>
+     *00 01 02 03
+     *07 06 05 04
+     *08 09 10 11
+     *15 14 13 12
+     * </pre>
+     */
+    SNAKE {
+        public int[] order(int size) {
+            return ofCells(size, cells(size, (column, row) ->
+                row * size + (row % 2 == 0 ? column : size - 1 - column)));
+        }
+    },
+    /**
+     * Interleaves the anti-diagonals, so cells sharing an anti-diagonal are
+     * adjacent:
+     * <pre>
+     *00 02 05 09
+     *01 04 08 12
+     *03 07 11 14
+     *06 10 13 15
+     * </pre>
+     */
+    DIAGONAL {
+        public int[] order(int size) {
+            return ofCells(size, cells(size, (column, row) ->
+                (column + row) * size + column));
+        }
+    },
+    /**
+     * Starts in the middle of the board and moves outwards ring by ring:
+     * <pre>
+     *04 05 06 07
+     *08 00 01 09
+     *10 02 03 11
+     *12 13 14 15
+     * </pre>
+     */
+    CENTER_OUT {
+        public int[] order(int size) {
+            // Twice the distance to the center, to stay in integers on even boards
+            return ofCells(size, cells(size, (column, row) -> {
+                int ring = Math.max(Math.abs(2 * column - (size - 1)), Math.abs(2 * row - (size - 1)));
+                return (ring * size + row) * size + column;
+            }));
+        }
+    };
+
+    /** Sort key of a position; cells are placed on the levels in increasing key order. */
+    private interface CellKey {
+        int key(int column, int row);
+    }
+
+    /** All positions as {column, row, key}. */
+    private static List<int[]> cells(int size, CellKey key) {
+        var cells = new ArrayList<int[]>();
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                cells.add(new int[] { column, row, key.key(column, row) });
+            }
+        }
+        return cells;
+    }
+
+    /** Turns positions into a level order of their (row-major) variables, sorted by key. */
+    private static int[] ofCells(int size, List<int[]> cells) {
+        cells.sort(Comparator.comparingInt(cell -> cell[2]));
+        var order = new int[cells.size()];
+        for (int level = 0; level < order.length; level++) {
+            var cell = cells.get(level);
+            order[level] = cell[0] + cell[1] * size;
+        }
+        return order;
+    }
+
+    /**
+     * The ordering with the given name, ignoring case and accepting '-' for '_'.
+     */
+    public static VariableOrdering fromName(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+
+    /**
+     * The ordering given by the system property queens.ordering, row-major
+     * by default.
+     */
+    public static VariableOrdering fromProperties() {
+        return fromName(System.getProperty("queens.ordering", "row-major"));
+    }
+
+    /**
+     * The dynamic reordering method with the given name (none, sift, siftite,
+     * win2, win2ite, win3, win3ite or random).
+     */
+    public static BDDFactory.ReorderMethod reorderMethod(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "none":    return BDDFactory.REORDER_NONE;
+            case "sift":    return BDDFactory.REORDER_SIFT;
+            case "siftite": return BDDFactory.REORDER_SIFTITE;
+            case "win2":    return BDDFactory.REORDER_WIN2;
+            case "win2ite": return BDDFactory.REORDER_WIN2ITE;
+            case "win3":    return BDDFactory.REORDER_WIN3;
+            case "win3ite": return BDDFactory.REORDER_WIN3ITE;
+            case "random":  return BDDFactory.REORDER_RANDOM;
+            default: throw new IllegalArgumentException("Unknown reorder method: " + name);
+        }
+    }
+
+    /**
+     * The dynamic reordering method given by the system property
+     * queens.reorder, none by default.
+     */
+    public static BDDFactory.ReorderMethod reorderFromProperties() {
+        return reorderMethod(System.getProperty("queens.reorder", "none"));
+    }
+}
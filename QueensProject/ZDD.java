@@ -0,0 +1,291 @@
+import java.util.Arrays;
+
+/**
+ * A small zero-suppressed decision diagram engine.
+ *
+ * A ZDD represents a family of sets of variables. Unlike a BDD, a node whose
+ * high branch is the empty family is removed, so a variable that does not
+ * appear on a path is absent from the sets of that path (rather than "either
+ * value"). This makes families of small sets over many variables, like the
+ * placements of n queens on n*n cells, very compact.
+ *
+ * Nodes are plain int handles into the node table; 0 is the empty family and
+ * 1 the family holding only the empty set. Variables are ordered by number,
+ * lowest at the top. Nodes are never freed, so an engine is meant to be
+ * dropped as a whole once its families are no longer needed.
+ */
+public class ZDD {
+    public static final int EMPTY = 0;
+    public static final int BASE = 1;
+
+    private static final int UNION = 0, INTERSECT = 1, DIFF = 2, CHANGE = 3, ONSET = 4, OFFSET = 5;
+
+    private final int varNum;
+
+    // Node table with a chained unique table over (var, lo, hi)
+    private int[] var, lo, hi, next;
+    private int[] buckets;
+    private int count = 2;
+
+    // Direct-mapped operation cache
+    private int[] cacheOp, cacheA, cacheB, cacheResult;
+
+    public ZDD(int varNum, int initialNodes) {
+        this.varNum = varNum;
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(2, initialNodes) - 1) << 1);
+        var = new int[capacity];
+        lo = new int[capacity];
+        hi = new int[capacity];
+        next = new int[capacity];
+        // Terminals sit below every variable
+        var[EMPTY] = var[BASE] = varNum;
+        buckets = new int[capacity];
+        Arrays.fill(buckets, -1);
+        allocateCache(capacity);
+    }
+
+    public int varNum() {
+        return varNum;
+    }
+
+    /** The number of nodes in the table, including the two terminals. */
+    public int nodeNum() {
+        return count;
+    }
+
+    public int var(int p) {
+        return var[p];
+    }
+
+    public int lo(int p) {
+        return lo[p];
+    }
+
+    public int hi(int p) {
+        return hi[p];
+    }
+
+    /** The family {{v}}. */
+    public int single(int v) {
+        return node(v, EMPTY, BASE);
+    }
+
+    // === Start of Operations === //
+
+    /** The sets in p or q. */
+    public int union(int p, int q) {
+        if (p == EMPTY) return q;
+        if (q == EMPTY || p == q) return p;
+        if (p > q) { int t = p; p = q; q = t; } // Commutative, so cache one order
+        int cached = lookup(UNION, p, q);
+        if (cached >= 0) return cached;
+
+        int result;
+        if (var[p] < var[q])
+            result = node(var[p], union(lo[p], q), hi[p]);
+        else if (var[p] > var[q])
+            result = node(var[q], union(p, lo[q]), hi[q]);
+        else
+            result = node(var[p], union(lo[p], lo[q]), union(hi[p], hi[q]));
+        return store(UNION, p, q, result);
+    }
+
+    /** The sets in both p and q. */
+    public int intersect(int p, int q) {
+        if (p == EMPTY || q == EMPTY) return EMPTY;
+        if (p == q) return p;
+        if (p > q) { int t = p; p = q; q = t; }
+        int cached = lookup(INTERSECT, p, q);
+        if (cached >= 0) return cached;
+
+        int result;
+        if (var[p] < var[q])
+            result = intersect(lo[p], q);
+        else if (var[p] > var[q])
+            result = intersect(p, lo[q]);
+        else
+            result = node(var[p], intersect(lo[p], lo[q]), intersect(hi[p], hi[q]));
+        return store(INTERSECT, p, q, result);
+    }
+
+    /** The sets in p but not in q. */
+    public int diff(int p, int q) {
+        if (p == EMPTY || p == q) return EMPTY;
+        if (q == EMPTY) return p;
+        int cached = lookup(DIFF, p, q);
+        if (cached >= 0) return cached;
+
+        int result;
+        if (var[p] < var[q])
+            result = node(var[p], diff(lo[p], q), hi[p]);
+        else if (var[p] > var[q])
+            result = diff(p, lo[q]);
+        else
+            result = node(var[p], diff(lo[p], lo[q]), diff(hi[p], hi[q]));
+        return store(DIFF, p, q, result);
+    }
+
+    /** The sets of p with v toggled: added where absent, removed where present. */
+    public int change(int p, int v) {
+        if (p == EMPTY) return EMPTY;
+        if (var[p] > v) return node(v, EMPTY, p);
+        int cached = lookup(CHANGE, p, v);
+        if (cached >= 0) return cached;
+
+        int result = var[p] == v
+            ? node(v, hi[p], lo[p])
+            : node(var[p], change(lo[p], v), change(hi[p], v));
+        return store(CHANGE, p, v, result);
+    }
+
+    /** The sets of p that contain v, with v removed. */
+    public int onset(int p, int v) {
+        if (var[p] > v) return EMPTY; // Also covers the terminals
+        int cached = lookup(ONSET, p, v);
+        if (cached >= 0) return cached;
+
+        int result = var[p] == v
+            ? hi[p]
+            : node(var[p], onset(lo[p], v), onset(hi[p], v));
+        return store(ONSET, p, v, result);
+    }
+
+    /** The sets of p that do not contain v. */
+    public int offset(int p, int v) {
+        if (var[p] > v) return p;
+        int cached = lookup(OFFSET, p, v);
+        if (cached >= 0) return cached;
+
+        int result = var[p] == v
+            ? lo[p]
+            : node(var[p], offset(lo[p], v), offset(hi[p], v));
+        return store(OFFSET, p, v, result);
+    }
+
+    /** The sets of p that contain v (keeping v). */
+    public int require(int p, int v) {
+        return change(onset(p, v), v);
+    }
+
+    /**
+     * The family p of another engine (over the same variables) in this one.
+     * As nodes are never freed, copying a result into a new engine is how
+     * the intermediate nodes it took to build it are dropped.
+     */
+    public int copy(ZDD source, int p) {
+        var copies = new int[source.count];
+        Arrays.fill(copies, -1);
+        return copy(source, p, copies);
+    }
+
+    private int copy(ZDD source, int p, int[] copies) {
+        if (p <= BASE) return p;
+        if (copies[p] >= 0) return copies[p];
+        return copies[p] = node(source.var[p], copy(source, source.lo[p], copies), copy(source, source.hi[p], copies));
+    }
+
+    /** The number of sets in p, saturating at Long.MAX_VALUE. */
+    public long count(int p) {
+        var memo = new long[count];
+        Arrays.fill(memo, -1);
+        return count(p, memo);
+    }
+
+    private long count(int p, long[] memo) {
+        if (p <= BASE) return p;
+        if (memo[p] >= 0) return memo[p];
+        long total = count(lo[p], memo) + count(hi[p], memo);
+        return memo[p] = total < 0 ? Long.MAX_VALUE : total;
+    }
+
+    /** The number of nodes reachable from p, terminals excluded. */
+    public int size(int p) {
+        var seen = new boolean[count];
+        var stack = new int[count];
+        int top = 0, size = 0;
+        stack[top++] = p;
+        while (top > 0) {
+            int node = stack[--top];
+            if (node <= BASE || seen[node]) continue;
+            seen[node] = true;
+            size++;
+            stack[top++] = lo[node];
+            stack[top++] = hi[node];
+        }
+        return size;
+    }
+
+    // === End of Operations === //
+
+    // === Start of Tables === //
+
+    /** The node (v, lo, hi), applying the zero-suppression rule. */
+    private int node(int v, int l, int h) {
+        if (h == EMPTY) return l;
+
+        int bucket = hash(v, l, h) & (buckets.length - 1);
+        for (int n = buckets[bucket]; n >= 0; n = next[n]) {
+            if (var[n] == v && lo[n] == l && hi[n] == h) return n;
+        }
+
+        if (count == var.length) {
+            grow();
+            bucket = hash(v, l, h) & (buckets.length - 1);
+        }
+        int n = count++;
+        var[n] = v;
+        lo[n] = l;
+        hi[n] = h;
+        next[n] = buckets[bucket];
+        buckets[bucket] = n;
+        return n;
+    }
+
+    private void grow() {
+        int capacity = var.length * 2;
+        var = Arrays.copyOf(var, capacity);
+        lo = Arrays.copyOf(lo, capacity);
+        hi = Arrays.copyOf(hi, capacity);
+        next = Arrays.copyOf(next, capacity);
+
+        buckets = new int[capacity];
+        Arrays.fill(buckets, -1);
+        for (int n = 2; n < count; n++) {
+            int bucket = hash(var[n], lo[n], hi[n]) & (capacity - 1);
+            next[n] = buckets[bucket];
+            buckets[bucket] = n;
+        }
+        allocateCache(capacity);
+    }
+
+    private void allocateCache(int capacity) {
+        int size = Math.max(1024, capacity / 2);
+        cacheOp = new int[size];
+        cacheA = new int[size];
+        cacheB = new int[size];
+        cacheResult = new int[size];
+        Arrays.fill(cacheOp, -1);
+    }
+
+    private int lookup(int op, int a, int b) {
+        int slot = hash(op, a, b) & (cacheOp.length - 1);
+        return cacheOp[slot] == op && cacheA[slot] == a && cacheB[slot] == b ? cacheResult[slot] : -1;
+    }
+
+    private int store(int op, int a, int b, int result) {
+        // The cache may have been replaced while computing result
+        int slot = hash(op, a, b) & (cacheOp.length - 1);
+        cacheOp[slot] = op;
+        cacheA[slot] = a;
+        cacheB[slot] = b;
+        cacheResult[slot] = result;
+        return result;
+    }
+
+    private static int hash(int a, int b, int c) {
+        int h = a * 0x9E3779B1 + b * 0x85EBCA77 + c * 0xC2B2AE3D;
+        return h ^ (h >>> 15);
+    }
+
+    // === End of Tables === //
+}
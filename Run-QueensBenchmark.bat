@@ -0,0 +1,3 @@
+cd "./QueensProject"
+javac -cp "javabdd-1.0b2.jar;." QueensBenchmark.java
+java -cp "javabdd-1.0b2.jar;." QueensBenchmark %*
\ No newline at end of file
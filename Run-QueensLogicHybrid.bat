@@ -0,0 +1,2 @@
+cd "./QueensProject"
+java -cp "javabdd-1.0b2.jar;." Queens QueensLogicHybrid 8
\ No newline at end of file